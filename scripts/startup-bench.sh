@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+#
+# Measures the startup time of the 'setup', 'invoke' and 'teardown' commands
+# when launched with 'mvn exec:java', with the launcher jar, and with the
+# launcher jar and its CDS archive.
+#
+# Each run sets STARTUP_BENCHMARK=true, so the example creates the service
+# clients a command needs and exits without calling OCI. The reported time is
+# the wall-clock median of RUNS runs, in milliseconds.
+#
+# Usage: scripts/startup-bench.sh [launcher-jar] [cds-archive]
+
+set -euo pipefail
+
+LAUNCHER_JAR=${1:-target/oci-java-sdk-function-example-1.0-SNAPSHOT-launcher.jar}
+CDS_ARCHIVE=${2:-target/launcher.jsa}
+RUNS=${RUNS:-5}
+COMMANDS=${COMMANDS:-"setup invoke teardown"}
+
+export STARTUP_BENCHMARK=true
+export COMPARTMENT_ID=${COMPARTMENT_ID:-startup-benchmark}
+
+median_ms() {
+    local times=()
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(date +%s%N)
+        "$@" > /dev/null
+        end=$(date +%s%N)
+        times+=($(( (end - start) / 1000000 )))
+    done
+    printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p"
+}
+
+printf '%-10s %12s %12s %12s\n' command exec:java jar jar+cds
+for command in $COMMANDS; do
+    exec_ms=$(median_ms mvn -q exec:java -Dexec.mainClass="InvokeFunctionExample" -Dexec.args="$command")
+    jar_ms=$(median_ms java -Xshare:auto -jar "$LAUNCHER_JAR" "$command")
+    if [ -f "$CDS_ARCHIVE" ]; then
+        cds_ms=$(median_ms java -XX:SharedArchiveFile="$CDS_ARCHIVE" -Xshare:auto -jar "$LAUNCHER_JAR" "$command")
+    else
+        cds_ms=-
+    fi
+    printf '%-10s %12s %12s %12s\n' "$command" "$exec_ms" "$jar_ms" "$cds_ms"
+done
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Access to the example's classes, which live in the default package.
+ *
+ * JMH requires benchmarks to be in a named package, and classes in the
+ * default package cannot be referenced from one at compile time. Benchmarks
+ * reach them through method handles instead; held in static final fields, the
+ * handles are inlined by the JIT and add no allocation to the measured code.
+ */
+final class DefaultPackage {
+
+    private DefaultPackage() {
+    }
+
+    static Class<?> type(final String name) {
+        try {
+            return Class.forName(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A constructor, adapted to return Object.
+     */
+    static MethodHandle constructor(final String className, final Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup()
+                .findConstructor(type(className), MethodType.methodType(void.class, parameterTypes))
+                .asType(MethodType.methodType(Object.class, parameterTypes));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A static method.
+     */
+    static MethodHandle function(
+        final String className,
+        final String methodName,
+        final Class<?> returnType,
+        final Class<?>... parameterTypes
+        ) {
+
+        try {
+            return MethodHandles.publicLookup()
+                .findStatic(type(className), methodName, MethodType.methodType(returnType, parameterTypes));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An instance method, adapted to take its receiver as Object.
+     */
+    static MethodHandle virtual(
+        final String className,
+        final String methodName,
+        final Class<?> returnType,
+        final Class<?>... parameterTypes
+        ) {
+
+        try {
+            final MethodHandle handle = MethodHandles.publicLookup()
+                .findVirtual(type(className), methodName, MethodType.methodType(returnType, parameterTypes));
+            return handle.asType(handle.type().changeParameterType(0, Object.class));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
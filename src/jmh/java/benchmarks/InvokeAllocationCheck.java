@@ -0,0 +1,160 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.functions.requests.InvokeFunctionRequest;
+
+/**
+ * Checks the allocation budget documented on InvokeRequestTemplate, and exits
+ * non-zero if it is exceeded.
+ *
+ * - Building a request from a template allocates no more than
+ * 'BUILD_BUDGET_BYTES' per call, whatever the payload size.
+ *
+ * - Invoking through a template, against a local StubFunctionServer, does not
+ * allocate a copy of the payload per call: it allocates at least half a
+ * payload less than building each request from scratch, as 'invokeFunction'
+ * does.
+ *
+ * Allocation is read per thread from 'ThreadMXBean.getThreadAllocatedBytes'
+ * over many calls, after a warm up. Run with 'make check-alloc'.
+ */
+public final class InvokeAllocationCheck {
+
+    final static int BUILD_BUDGET_BYTES = 256;
+    final static int PAYLOAD_BYTES = 64 * 1024;
+
+    final static int BUILD_WARMUP_CALLS = 50000;
+    final static int BUILD_CALLS = 200000;
+    final static int INVOKE_WARMUP_CALLS = 500;
+    final static int INVOKE_CALLS = 2000;
+
+    private static final MethodHandle NEW_TEMPLATE = DefaultPackage.constructor(
+        "InvokeRequestTemplate", FunctionsInvokeClient.class, FunctionSummary.class);
+
+    private static final MethodHandle NEW_REQUEST_FROM_STRING = DefaultPackage.virtual(
+        "InvokeRequestTemplate", "newRequest", InvokeFunctionRequest.class, CharSequence.class);
+
+    private static final MethodHandle NEW_REQUEST_FROM_BYTES = DefaultPackage.virtual(
+        "InvokeRequestTemplate", "newRequest", InvokeFunctionRequest.class, byte[].class, int.class);
+
+    private static final MethodHandle INVOKE = DefaultPackage.virtual(
+        "InvokeRequestTemplate", "invoke", Object.class, CharSequence.class, DefaultPackage.type("ResponseSink"));
+
+    private static final MethodHandle INVOKE_FROM_SCRATCH = DefaultPackage.function(
+        "InvokeFunctionExample", "invokeFunction", Object.class,
+        FunctionsInvokeClient.class, FunctionSummary.class, String.class, DefaultPackage.type("ResponseSink"));
+
+    private static final MethodHandle TO_UTF8_STRING = DefaultPackage.function(
+        "ResponseSinks", "toUtf8String", DefaultPackage.type("ResponseSink"));
+
+    private static final MethodHandle NEW_STUB_SERVER = DefaultPackage.constructor(
+        "StubFunctionServer", long.class);
+
+    private static final MethodHandle STUB_ENDPOINT = DefaultPackage.virtual(
+        "StubFunctionServer", "getEndpoint", String.class);
+
+    private static final MethodHandle CLOSE_STUB_SERVER = DefaultPackage.virtual(
+        "StubFunctionServer", "close", void.class);
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private InvokeAllocationCheck() {
+    }
+
+    /**
+     * A measured operation, which may throw anything a method handle can.
+     */
+    private interface Call {
+        void run() throws Throwable;
+    }
+
+    public static void main(final String[] args) throws Throwable {
+        boolean passed = true;
+
+        final Object stubServer = (Object) NEW_STUB_SERVER.invokeExact(0L);
+        final FunctionsInvokeClient fnInvokeClient =
+            new FunctionsInvokeClient(BenchmarkAuth.provider(BenchmarkAuth.generateKeyPair()));
+        try {
+            final String endpoint = (String) STUB_ENDPOINT.invokeExact(stubServer);
+            fnInvokeClient.setEndpoint(endpoint);
+            final FunctionSummary fn = FunctionSummary.builder()
+                .id("ocid1.fnfunc.oc1.phx.stub")
+                .invokeEndpoint(endpoint)
+                .build();
+            final Object template = (Object) NEW_TEMPLATE.invokeExact(fnInvokeClient, fn);
+
+            for (final int payloadSize : new int[] { 64, PAYLOAD_BYTES }) {
+                final String payload = payload(payloadSize);
+                final byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+                final long fromBytes = bytesPerCall(BUILD_WARMUP_CALLS, BUILD_CALLS, () -> {
+                    final InvokeFunctionRequest request = (InvokeFunctionRequest)
+                        NEW_REQUEST_FROM_BYTES.invokeExact(template, payloadBytes, payloadBytes.length);
+                });
+                passed &= report("newRequest(byte[], int), " + payloadSize + "B payload",
+                    fromBytes, BUILD_BUDGET_BYTES);
+
+                final long fromString = bytesPerCall(BUILD_WARMUP_CALLS, BUILD_CALLS, () -> {
+                    final InvokeFunctionRequest request = (InvokeFunctionRequest)
+                        NEW_REQUEST_FROM_STRING.invokeExact(template, (CharSequence) payload);
+                });
+                passed &= report("newRequest(CharSequence), " + payloadSize + "B payload",
+                    fromString, BUILD_BUDGET_BYTES);
+            }
+
+            // Both paths decode the echoed response with the same sink, so the difference is the request.
+            final String payload = payload(PAYLOAD_BYTES);
+            final Object sink = TO_UTF8_STRING.invoke();
+            final long templateInvoke = bytesPerCall(INVOKE_WARMUP_CALLS, INVOKE_CALLS, () -> {
+                final Object response = INVOKE.invoke(template, (CharSequence) payload, sink);
+            });
+            final long scratchInvoke = bytesPerCall(INVOKE_WARMUP_CALLS, INVOKE_CALLS, () -> {
+                final Object response = INVOKE_FROM_SCRATCH.invoke(fnInvokeClient, fn, payload, sink);
+            });
+            System.out.println("invoke from scratch, " + PAYLOAD_BYTES + "B payload: " + scratchInvoke + " B/call");
+            passed &= report("invoke through template, " + PAYLOAD_BYTES + "B payload",
+                templateInvoke, scratchInvoke - PAYLOAD_BYTES / 2);
+        } finally {
+            fnInvokeClient.close();
+            CLOSE_STUB_SERVER.invokeExact(stubServer);
+        }
+
+        if (!passed) {
+            System.err.println("Allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+
+    private static long bytesPerCall(final int warmupCalls, final int calls, final Call call) throws Throwable {
+        for (int i = 0; i < warmupCalls; i++) {
+            call.run();
+        }
+        final long thread = Thread.currentThread().getId();
+        final long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) {
+            call.run();
+        }
+        return (THREADS.getThreadAllocatedBytes(thread) - before) / calls;
+    }
+
+    private static boolean report(final String what, final long bytesPerCall, final long budget) {
+        final boolean withinBudget = bytesPerCall <= budget;
+        System.out.println(what + ": " + bytesPerCall + " B/call (budget " + budget + " B) "
+            + (withinBudget ? "OK" : "EXCEEDED"));
+        return withinBudget;
+    }
+
+    private static String payload(final int size) {
+        final StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+}
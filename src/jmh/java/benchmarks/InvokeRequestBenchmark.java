@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.functions.requests.InvokeFunctionRequest;
+import com.oracle.bmc.util.StreamUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building invoke requests from scratch, as 'invokeFunction' does,
+ * against reusing an InvokeRequestTemplate.
+ *
+ * Run with 'make bench BENCH=InvokeRequestBenchmark' to compare
+ * 'gc.alloc.rate.norm' (bytes per request); 'make check-alloc' checks the
+ * budget documented on InvokeRequestTemplate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvokeRequestBenchmark {
+
+    private static final MethodHandle NEW_TEMPLATE = DefaultPackage.constructor(
+        "InvokeRequestTemplate", FunctionsInvokeClient.class, FunctionSummary.class);
+
+    private static final MethodHandle NEW_REQUEST_FROM_STRING = DefaultPackage.virtual(
+        "InvokeRequestTemplate", "newRequest", InvokeFunctionRequest.class, CharSequence.class);
+
+    private static final MethodHandle NEW_REQUEST_FROM_BYTES = DefaultPackage.virtual(
+        "InvokeRequestTemplate", "newRequest", InvokeFunctionRequest.class, byte[].class, int.class);
+
+    @Param({ "64", "4096" })
+    int payloadSize;
+
+    private FunctionsInvokeClient fnInvokeClient;
+    private FunctionSummary fn;
+    private Object template;
+    private String payload;
+    private byte[] payloadBytes;
+
+    @Setup
+    public void setup() throws Throwable {
+        fnInvokeClient = new FunctionsInvokeClient(BenchmarkAuth.provider(BenchmarkAuth.generateKeyPair()));
+        fn = FunctionSummary.builder()
+            .id("ocid1.fnfunc.oc1.phx.benchmark")
+            .invokeEndpoint("https://benchmark.us-phoenix-1.functions.oci.oraclecloud.com")
+            .build();
+        template = (Object) NEW_TEMPLATE.invokeExact(fnInvokeClient, fn);
+
+        final StringBuilder builder = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        payload = builder.toString();
+        payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fnInvokeClient.close();
+    }
+
+    @Benchmark
+    public InvokeFunctionRequest fromScratch() {
+        fnInvokeClient.setEndpoint(fn.getInvokeEndpoint());
+        return InvokeFunctionRequest.builder()
+            .functionId(fn.getId())
+            .invokeFunctionBody(
+                StreamUtils.createByteArrayInputStream(
+                    payload.getBytes()))
+            .build();
+    }
+
+    @Benchmark
+    public InvokeFunctionRequest templateFromString() throws Throwable {
+        return (InvokeFunctionRequest) NEW_REQUEST_FROM_STRING.invokeExact(template, (CharSequence) payload);
+    }
+
+    @Benchmark
+    public InvokeFunctionRequest templateFromBytes() throws Throwable {
+        return (InvokeFunctionRequest) NEW_REQUEST_FROM_BYTES.invokeExact(template, payloadBytes, payloadBytes.length);
+    }
+}
@@ -0,0 +1,157 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oracle.bmc.auth.SimpleAuthenticationDetailsProvider;
+import com.oracle.bmc.http.signing.DefaultRequestSigner;
+import com.oracle.bmc.http.signing.RequestSigner;
+import com.oracle.bmc.http.signing.RequestSignerFactory;
+import com.oracle.bmc.http.signing.SigningStrategy;
+import com.oracle.bmc.util.StreamUtils;
+
+/**
+ * Checks that CachingRequestSigner produces the same headers as the SDK's
+ * default signer, and exits non-zero if it does not.
+ *
+ * Fixed requests are signed with both, and their headers compared whole:
+ * GET, DELETE and buffered POST and PUT bodies against the 'STANDARD'
+ * strategy, and a streamed invoke body against 'EXCLUDE_BODY'; with and
+ * without a query string; and with none, each, and all of the optional
+ * signed headers. RSA signatures are deterministic, so the same string to
+ * sign gives the same 'authorization' header.
+ *
+ * Most requests carry a fixed 'date' header, which both signers sign as
+ * given. One does not, to check the date each signer formats for itself; it
+ * is signed again if the second changes between the two.
+ *
+ * Run with 'make check-signer'.
+ */
+public final class SignerEquivalenceCheck {
+
+    final static String DATE = "Tue, 07 Jan 2020 09:08:07 GMT";
+
+    final static String[] OPTIONAL_SIGNED_HEADERS = { "opc-obo-token", "x-cross-tenancy-request", "x-subscription" };
+
+    private static final MethodHandle NEW_SIGNER_FACTORY =
+        DefaultPackage.constructor("CachingRequestSigner$Factory");
+
+    private static final String ENDPOINT = "https://functions.us-phoenix-1.oraclecloud.com";
+
+    private static final URI[] URIS = {
+        URI.create(ENDPOINT + "/20181201/functions/ocid1.fnfunc.oc1.phx.check"),
+        URI.create(ENDPOINT + "/20181201/functions?compartmentId=ocid1.compartment.oc1..check&limit=50"
+            + "&page=a%2Fb%3D&displayName=fn%20check"),
+    };
+
+    private static final byte[] INVOKE_PAYLOAD = "{\"name\":\"check\"}".getBytes();
+
+    private SignerEquivalenceCheck() {
+    }
+
+    public static void main(final String[] args) throws Throwable {
+        final SimpleAuthenticationDetailsProvider provider =
+            BenchmarkAuth.provider(BenchmarkAuth.generateKeyPair());
+
+        final RequestSigner cachingSigner = ((RequestSignerFactory) (Object) NEW_SIGNER_FACTORY.invokeExact())
+            .createRequestSigner(null, provider);
+        final RequestSigner standardSigner =
+            DefaultRequestSigner.createRequestSigner(provider, SigningStrategy.STANDARD);
+        // As the SDK signs invoke requests, whose bodies are streamed.
+        final RequestSigner excludeBodySigner =
+            DefaultRequestSigner.createRequestSigner(provider, SigningStrategy.EXCLUDE_BODY);
+
+        int checked = 0;
+        int mismatched = 0;
+        for (final URI uri : URIS) {
+            for (final Map<String, String> optional : optionalHeaders()) {
+                for (final String method : new String[] { "GET", "DELETE", "POST", "PUT" }) {
+                    final Map<String, List<String>> headers = headers(optional);
+                    final String body = ("POST".equals(method) || "PUT".equals(method)) ? "{\"limit\":50}" : null;
+                    if (body != null) {
+                        headers.put("content-type", Collections.singletonList("application/json"));
+                    }
+                    checked++;
+                    if (!same(method + " " + uri + " " + optional.keySet(),
+                            standardSigner.signRequest(uri, method, headers, body),
+                            cachingSigner.signRequest(uri, method, headers, body))) {
+                        mismatched++;
+                    }
+                }
+
+                final Map<String, List<String>> headers = headers(optional);
+                headers.put("content-type", Collections.singletonList("application/octet-stream"));
+                headers.put("accept", Collections.singletonList("application/octet-stream"));
+                checked++;
+                if (!same("POST (streamed) " + uri + " " + optional.keySet(),
+                        excludeBodySigner.signRequest(
+                            uri, "POST", headers, StreamUtils.createByteArrayInputStream(INVOKE_PAYLOAD)),
+                        cachingSigner.signRequest(
+                            uri, "POST", headers, StreamUtils.createByteArrayInputStream(INVOKE_PAYLOAD)))) {
+                    mismatched++;
+                }
+            }
+        }
+
+        // Without a date header each signer formats the current time, which may tick over between the two.
+        final Map<String, List<String>> undated = new HashMap<>();
+        Map<String, String> expected;
+        Map<String, String> actual;
+        long second;
+        do {
+            second = System.currentTimeMillis() / 1000L;
+            expected = standardSigner.signRequest(URIS[1], "GET", undated, null);
+            actual = cachingSigner.signRequest(URIS[1], "GET", undated, null);
+        } while (second != System.currentTimeMillis() / 1000L);
+        checked++;
+        if (!same("GET " + URIS[1] + " (current date)", expected, actual)) {
+            mismatched++;
+        }
+
+        System.out.println(checked - mismatched + " of " + checked + " requests signed identically");
+        if (mismatched > 0) {
+            System.err.println("CachingRequestSigner differs from the SDK's default signer");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * None, each, and all of the optional signed headers.
+     */
+    private static List<Map<String, String>> optionalHeaders() {
+        final List<Map<String, String>> sets = new ArrayList<>();
+        sets.add(Collections.emptyMap());
+        final Map<String, String> all = new HashMap<>();
+        for (final String name : OPTIONAL_SIGNED_HEADERS) {
+            final String value = name + "-value";
+            sets.add(Collections.singletonMap(name, value));
+            all.put(name, value);
+        }
+        sets.add(all);
+        return sets;
+    }
+
+    private static Map<String, List<String>> headers(final Map<String, String> optional) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        headers.put("date", Collections.singletonList(DATE));
+        for (final Map.Entry<String, String> header : optional.entrySet()) {
+            headers.put(header.getKey(), Collections.singletonList(header.getValue()));
+        }
+        return headers;
+    }
+
+    private static boolean same(final String request, final Map<String, String> expected, final Map<String, String> actual) {
+        if (expected.equals(actual)) {
+            return true;
+        }
+        System.out.println(request + ": MISMATCH");
+        System.out.println("  default: " + expected);
+        System.out.println("  caching: " + actual);
+        return false;
+    }
+}
@@ -0,0 +1,415 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * An adaptive limit on the in-flight invocations of a single Function, using
+ * the TCP Vegas congestion avoidance algorithm.
+ *
+ * The limiter tracks the lowest round trip time seen (the no-load RTT) and,
+ * from each sampled RTT, estimates how many invocations are queued rather
+ * than being served: queue = limit * (1 - minRtt / rtt).
+ *
+ * - While the estimated queue is small the limit grows, quickly when it is
+ * near zero and by log10(limit) otherwise.
+ *
+ * - Once the queue exceeds a few times log10(limit) the limit shrinks by
+ * log10(limit).
+ *
+ * - An invocation which fails with a 429, a 5xx or a transport error is a
+ * drop, and the limit is cut multiplicatively.
+ *
+ * As in TCP Vegas, the limit changes at most once per no-load RTT, judged on
+ * the mean RTT of the calls completed since the last change, so it does not
+ * overshoot while the effect of a change is still in flight.
+ *
+ * Calls beyond the limit wait for an in-flight call to complete. The no-load
+ * RTT is re-learned periodically, so a Function which got faster or slower
+ * is tracked. Limiters are shared per function id, and each is registered as
+ * an MXBean so its limit can be watched with any JMX client (e.g. 'jconsole').
+ */
+public class AdaptiveLimiter implements AdaptiveLimiterMXBean {
+
+    final static double BACKOFF_RATIO = 0.9;
+    final static int PROBE_INTERVAL_SAMPLES = 1000;
+
+    private final static ConcurrentMap<String, AdaptiveLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    // Null when adaptive limiting is disabled, the default.
+    private static volatile Settings defaultSettings;
+
+    private final String functionId;
+    private final Settings settings;
+    private final List<Runnable> headroomListeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by 'this'.
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long samplesSinceProbe;
+
+    // Guarded by 'this'. The samples of the current round trip.
+    private long windowStartNanos = System.nanoTime();
+    private long windowRttNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private boolean windowDropped;
+
+    private long samples;
+    private long drops;
+    private long waits;
+
+    /**
+     * @param functionId the Function the limiter guards.
+     * @param settings   the bounds of the limit.
+     */
+    public AdaptiveLimiter(final String functionId, final Settings settings) {
+        this.functionId = functionId;
+        this.settings = settings;
+        this.limit = settings.initialLimit;
+    }
+
+    /**
+     * Sets the bounds of limiters created from now on, or disables adaptive
+     * limiting.
+     *
+     * @param settings the bounds, or null to disable adaptive limiting.
+     */
+    public static void setDefaultSettings(final Settings settings) {
+        defaultSettings = settings;
+    }
+
+    /**
+     * @param functionId the Function to limit.
+     * @return the shared limiter of the Function, or null if adaptive
+     *         limiting is disabled.
+     */
+    public static AdaptiveLimiter forFunction(final String functionId) {
+        final Settings settings = defaultSettings;
+        if (settings == null) {
+            return null;
+        }
+        return LIMITERS.computeIfAbsent(functionId, id -> register(new AdaptiveLimiter(id, settings)));
+    }
+
+    /**
+     * Makes a call within the shared limit of a Function, or directly if
+     * adaptive limiting is disabled.
+     *
+     * @param functionId the Function the call invokes.
+     * @param call       the call.
+     * @return the result of the call.
+     * @throws Exception if the call fails.
+     */
+    public static <T> T call(final String functionId, final Callable<T> call) throws Exception {
+        final AdaptiveLimiter limiter = forFunction(functionId);
+        return (limiter != null) ? limiter.call(call) : call.call();
+    }
+
+    /**
+     * Starts an asynchronous call within the shared limit of a Function, or
+     * directly if adaptive limiting is disabled. Blocks while the Function is
+     * at its limit.
+     *
+     * @param functionId the Function the call invokes.
+     * @param call       starts the call.
+     * @return the result of the call.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static <T> CompletableFuture<T> callAsync(
+        final String functionId,
+        final Supplier<CompletableFuture<T>> call
+        ) throws InterruptedException {
+
+        final AdaptiveLimiter limiter = forFunction(functionId);
+        return (limiter != null) ? limiter.callAsync(call) : call.get();
+    }
+
+    /**
+     * Makes a call within the limit, waiting while at the limit.
+     *
+     * @param call the call.
+     * @return the result of the call.
+     * @throws Exception if the call fails.
+     */
+    public <T> T call(final Callable<T> call) throws Exception {
+        acquire();
+        return callAcquired(call);
+    }
+
+    /**
+     * Takes a place within the limit, if there is one, without waiting.
+     *
+     * @return whether a place was taken; if so, the call must be made with
+     *         'callAcquired'.
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Adds a listener to run whenever a call completes and leaves room within
+     * the limit. Listeners run outside the limiter's lock, on the thread which
+     * completed the call, so must be quick.
+     *
+     * @param listener the listener.
+     */
+    public void addHeadroomListener(final Runnable listener) {
+        headroomListeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener added with 'addHeadroomListener'.
+     */
+    public void removeHeadroomListener(final Runnable listener) {
+        headroomListeners.remove(listener);
+    }
+
+    /**
+     * Makes a call in a place already taken with 'tryAcquire', and gives the
+     * place up when the call completes.
+     *
+     * @param call the call.
+     * @return the result of the call.
+     * @throws Exception if the call fails.
+     */
+    public <T> T callAcquired(final Callable<T> call) throws Exception {
+        final long start = System.nanoTime();
+        try {
+            final T result = call.call();
+            release(System.nanoTime() - start, false);
+            return result;
+        } catch (final Exception e) {
+            release(System.nanoTime() - start, e);
+            throw e;
+        } catch (final Error e) {
+            release(System.nanoTime() - start, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts an asynchronous call within the limit, waiting while at the
+     * limit. The call's RTT is sampled when it completes.
+     *
+     * @param call starts the call.
+     * @return the result of the call.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call)
+        throws InterruptedException {
+
+        acquire();
+        final long start = System.nanoTime();
+        final CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (final RuntimeException e) {
+            release(System.nanoTime() - start, e);
+            throw e;
+        }
+        return result.whenComplete((response, error) -> {
+            final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                ? error.getCause()
+                : error;
+            if (cause == null) {
+                release(System.nanoTime() - start, false);
+            } else if (cause instanceof Exception) {
+                release(System.nanoTime() - start, (Exception) cause);
+            } else {
+                release(System.nanoTime() - start, true);
+            }
+        });
+    }
+
+    private synchronized void acquire() throws InterruptedException {
+        if (inFlight >= (int) limit) {
+            waits++;
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Rejected calls never reached the Function, and say nothing about its
+     * latency; other errors are classified as the circuit breaker does.
+     */
+    private void release(final long rttNanos, final Exception e) {
+        if (e instanceof CircuitBreakerOpenException) {
+            synchronized (this) {
+                inFlight--;
+                notifyAll();
+            }
+            headroom();
+            return;
+        }
+        release(rttNanos, CircuitBreaker.isFailure(e));
+    }
+
+    private void release(final long rttNanos, final boolean dropped) {
+        if (releaseLocked(rttNanos, dropped)) {
+            headroom();
+        }
+    }
+
+    /**
+     * @return whether the limit has room for another call.
+     */
+    private synchronized boolean releaseLocked(final long rttNanos, final boolean dropped) {
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        inFlight--;
+        samples++;
+
+        if (dropped) {
+            // A rejection is often quicker than any real invocation, so is no guide to the no-load RTT.
+            drops++;
+            windowDropped = true;
+        } else {
+            if (++samplesSinceProbe >= PROBE_INTERVAL_SAMPLES) {
+                // Forget the no-load RTT, so it is re-learned from the next samples.
+                samplesSinceProbe = 0;
+                minRttNanos = Long.MAX_VALUE;
+            }
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+            windowRttNanos += rttNanos;
+            windowSamples++;
+        }
+
+        // As in TCP Vegas, the limit changes once per round trip, after the effect of the last change is seen.
+        final long now = System.nanoTime();
+        final double previousLimit = limit;
+        if (now - windowStartNanos >= ((minRttNanos == Long.MAX_VALUE) ? 0L : minRttNanos)) {
+            updateLimit();
+            windowStartNanos = now;
+            windowRttNanos = 0L;
+            windowSamples = 0;
+            windowMaxInFlight = 0;
+            windowDropped = false;
+        }
+
+        if (limit > previousLimit || inFlight < (int) limit) {
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    // Outside the lock, so a listener may take its own locks, and call 'tryAcquire' under them.
+    private void headroom() {
+        for (final Runnable listener : headroomListeners) {
+            listener.run();
+        }
+    }
+
+    private void updateLimit() {
+        if (windowDropped) {
+            limit = limit * BACKOFF_RATIO;
+        } else if (windowSamples > 0 && windowMaxInFlight * 2 >= limit) {
+            // Only a limit which is actually being used can be judged too high or too low.
+            final double rttNanos = windowRttNanos / (double) windowSamples;
+            final double log10 = Math.max(1.0, Math.log10(limit));
+            final double queue = limit * (1.0 - minRttNanos / rttNanos);
+            if (queue <= log10) {
+                limit += 3 * log10;
+            } else if (queue < 3 * log10) {
+                limit += log10;
+            } else if (queue > 6 * log10) {
+                limit -= log10;
+            }
+        }
+        limit = Math.max(settings.minLimit, Math.min(settings.maxLimit, limit));
+    }
+
+    private static AdaptiveLimiter register(final AdaptiveLimiter limiter) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                limiter,
+                new ObjectName("InvokeFunctionExample:type=AdaptiveLimiter,function="
+                    + ObjectName.quote(limiter.functionId)));
+        } catch (final JMException e) {
+            System.err.println("Failed to register adaptive limiter metrics: " + e);
+        }
+        return limiter;
+    }
+
+    // === AdaptiveLimiterMXBean ===
+
+    @Override
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized double getMinRttMillis() {
+        return (minRttNanos == Long.MAX_VALUE) ? 0.0 : minRttNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public synchronized long getDrops() {
+        return drops;
+    }
+
+    @Override
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    /**
+     * The bounds of an AdaptiveLimiter.
+     */
+    public static class Settings {
+
+        final int initialLimit;
+        final int minLimit;
+        final int maxLimit;
+
+        /**
+         * @param initialLimit the limit before any call has completed.
+         * @param minLimit     the lowest the limit can fall to.
+         * @param maxLimit     the highest the limit can grow to.
+         * @throws IllegalArgumentException unless 1 <= minLimit <= initialLimit
+         *         <= maxLimit.
+         */
+        public Settings(final int initialLimit, final int minLimit, final int maxLimit) {
+            // A limit below 1 would admit no calls, and leave every caller waiting.
+            if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+                throw new IllegalArgumentException("Adaptive limits must satisfy 1 <= min <= initial <= max; got min="
+                    + minLimit + ", initial=" + initialLimit + ", max=" + maxLimit);
+            }
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+        }
+    }
+}
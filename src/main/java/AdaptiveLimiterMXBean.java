@@ -0,0 +1,24 @@
+/**
+ * The JMX view of a Function's AdaptiveLimiter, registered as
+ * 'InvokeFunctionExample:type=AdaptiveLimiter,function=<function id>'.
+ */
+public interface AdaptiveLimiterMXBean {
+
+    String getFunctionId();
+
+    // The current number of invocations allowed in flight.
+    int getLimit();
+
+    int getInFlight();
+
+    // The lowest round trip time seen since the last probe.
+    double getMinRttMillis();
+
+    long getSamples();
+
+    // Invocations which failed with a 429, a 5xx or a transport error.
+    long getDrops();
+
+    // Invocations which had to wait for the limit.
+    long getWaits();
+}
@@ -0,0 +1,386 @@
+import java.lang.management.ManagementFactory;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.ws.rs.ProcessingException;
+
+import com.oracle.bmc.model.BmcException;
+
+import org.apache.hc.core5.http.ConnectionClosedException;
+
+/**
+ * A circuit breaker guarding the invocations of a single Function.
+ *
+ * - CLOSED: calls pass through, and the outcome of the most recent calls is
+ * kept in a sliding window. A call fails if it throws a server-side or
+ * transport error, or if it takes longer than the slow call threshold. Once
+ * the window holds enough calls and the fraction which failed reaches the
+ * threshold, the circuit opens.
+ *
+ * - OPEN: calls fail immediately with a CircuitBreakerOpenException, without
+ * touching the network, until the open duration has passed.
+ *
+ * - HALF_OPEN: a few trial calls are let through. If they all succeed the
+ * circuit closes with an empty window; if any fails it opens again.
+ *
+ * Breakers are shared per function id, and each is registered as an MXBean
+ * so its state can be watched with any JMX client (e.g. 'jconsole').
+ */
+public class CircuitBreaker implements CircuitBreakerMXBean {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    final static int WINDOW_SIZE = 50;
+    final static int MINIMUM_CALLS = 20;
+    final static int HALF_OPEN_CALLS = 3;
+
+    private final static byte SUCCESS = 0;
+    private final static byte FAILURE = 1;
+
+    private final static ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    // Null when circuit breaking is disabled, the default.
+    private static volatile Settings defaultSettings;
+
+    private final String functionId;
+    private final Settings settings;
+
+    // Guarded by 'this'.
+    private State state = State.CLOSED;
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowCalls;
+    private int windowNext;
+    private int windowFailures;
+    private long openedAtNanos;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    private long successfulCalls;
+    private long failedCalls;
+    private long slowCalls;
+    private long rejectedCalls;
+    private long timesOpened;
+
+    /**
+     * @param functionId the Function the breaker guards.
+     * @param settings   the thresholds of the breaker.
+     */
+    public CircuitBreaker(final String functionId, final Settings settings) {
+        this.functionId = functionId;
+        this.settings = settings;
+    }
+
+    /**
+     * Sets the thresholds of breakers created from now on, or disables circuit
+     * breaking.
+     *
+     * @param settings the thresholds, or null to disable circuit breaking.
+     */
+    public static void setDefaultSettings(final Settings settings) {
+        defaultSettings = settings;
+    }
+
+    /**
+     * @param functionId the Function to guard.
+     * @return the shared breaker of the Function, or null if circuit breaking
+     *         is disabled.
+     */
+    public static CircuitBreaker forFunction(final String functionId) {
+        final Settings settings = defaultSettings;
+        if (settings == null) {
+            return null;
+        }
+        return BREAKERS.computeIfAbsent(functionId, id -> register(new CircuitBreaker(id, settings)));
+    }
+
+    /**
+     * Makes a call through the shared breaker of a Function, or directly if
+     * circuit breaking is disabled.
+     *
+     * @param functionId the Function the call invokes.
+     * @param call       the call.
+     * @return the result of the call.
+     * @throws CircuitBreakerOpenException if the circuit is open.
+     * @throws Exception                   if the call fails.
+     */
+    public static <T> T call(final String functionId, final Callable<T> call) throws Exception {
+        final CircuitBreaker breaker = forFunction(functionId);
+        return (breaker != null) ? breaker.call(call) : call.call();
+    }
+
+    /**
+     * Makes a call through the breaker.
+     *
+     * @param call the call.
+     * @return the result of the call.
+     * @throws CircuitBreakerOpenException if the circuit is open.
+     * @throws Exception                   if the call fails.
+     */
+    public <T> T call(final Callable<T> call) throws Exception {
+        acquirePermission();
+
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = call.call();
+        } catch (final Exception e) {
+            onComplete(isFailure(e), false);
+            throw e;
+        }
+
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        onComplete(false, elapsedMillis > settings.slowCallMillis);
+        return result;
+    }
+
+    /**
+     * Starts an asynchronous call through the shared breaker of a Function,
+     * or directly if circuit breaking is disabled.
+     *
+     * @param functionId the Function the call invokes.
+     * @param call       starts the call.
+     * @return the result of the call, failed with a
+     *         CircuitBreakerOpenException if the circuit is open.
+     */
+    public static <T> CompletableFuture<T> callAsync(
+        final String functionId,
+        final Supplier<CompletableFuture<T>> call
+        ) {
+
+        final CircuitBreaker breaker = forFunction(functionId);
+        return (breaker != null) ? breaker.callAsync(call) : call.get();
+    }
+
+    /**
+     * Starts an asynchronous call through the breaker. The call's outcome is
+     * recorded when it completes.
+     *
+     * @param call starts the call.
+     * @return the result of the call, failed with a
+     *         CircuitBreakerOpenException if the circuit is open.
+     */
+    public <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call) {
+        try {
+            acquirePermission();
+        } catch (final CircuitBreakerOpenException e) {
+            final CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+
+        final long start = System.nanoTime();
+        final CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (final RuntimeException e) {
+            onComplete(isFailure(e), false);
+            throw e;
+        }
+
+        return result.whenComplete((response, error) -> {
+            if (error == null) {
+                final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                onComplete(false, elapsedMillis > settings.slowCallMillis);
+            } else {
+                final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause()
+                    : error;
+                onComplete(!(cause instanceof Exception) || isFailure((Exception) cause), false);
+            }
+        });
+    }
+
+    /**
+     * Only errors which suggest the function or its endpoint is unhealthy
+     * count as failures: a 429, a 5xx, or a transport error reaching the
+     * endpoint. A rejected payload, or a bug on the caller's side, does not.
+     */
+    static boolean isFailure(final Exception e) {
+        if (e instanceof BmcException) {
+            final int statusCode = ((BmcException) e).getStatusCode();
+            return statusCode <= 0 || statusCode == 429 || statusCode >= 500;
+        }
+        return e instanceof ProcessingException
+            || e instanceof SocketTimeoutException
+            || e instanceof SocketException
+            || e instanceof UnknownHostException
+            || e instanceof ConnectionClosedException;
+    }
+
+    private synchronized void acquirePermission() throws CircuitBreakerOpenException {
+        if (state == State.OPEN) {
+            final long openNanos = TimeUnit.MILLISECONDS.toNanos(settings.openMillis);
+            final long remainingNanos = openedAtNanos + openNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                rejectedCalls++;
+                throw new CircuitBreakerOpenException(functionId, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= HALF_OPEN_CALLS) {
+                rejectedCalls++;
+                throw new CircuitBreakerOpenException(functionId, 0L);
+            }
+            halfOpenPermitted++;
+        }
+    }
+
+    private synchronized void onComplete(final boolean failed, final boolean slow) {
+        if (failed) {
+            failedCalls++;
+        } else if (slow) {
+            slowCalls++;
+        } else {
+            successfulCalls++;
+        }
+        final boolean failure = failed || slow;
+
+        switch (state) {
+            case HALF_OPEN:
+                if (failure) {
+                    open();
+                } else if (++halfOpenSucceeded >= HALF_OPEN_CALLS) {
+                    close();
+                }
+                break;
+
+            case CLOSED:
+                record(failure ? FAILURE : SUCCESS);
+                if (windowCalls >= MINIMUM_CALLS && failureRate() >= settings.failureRateThreshold) {
+                    open();
+                }
+                break;
+
+            default:
+                // A call permitted before the circuit opened; its outcome is already moot.
+                break;
+        }
+    }
+
+    private void record(final byte outcome) {
+        if (windowCalls == WINDOW_SIZE) {
+            windowFailures -= window[windowNext];
+        } else {
+            windowCalls++;
+        }
+        window[windowNext] = outcome;
+        windowFailures += outcome;
+        windowNext = (windowNext + 1) % WINDOW_SIZE;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        timesOpened++;
+        System.err.println("Circuit breaker opened for function: " + functionId);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowCalls = 0;
+        windowNext = 0;
+        windowFailures = 0;
+        System.err.println("Circuit breaker closed for function: " + functionId);
+    }
+
+    private double failureRate() {
+        return (windowCalls == 0) ? 0.0 : windowFailures / (double) windowCalls;
+    }
+
+    private static CircuitBreaker register(final CircuitBreaker breaker) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                breaker,
+                new ObjectName("InvokeFunctionExample:type=CircuitBreaker,function="
+                    + ObjectName.quote(breaker.functionId)));
+        } catch (final JMException e) {
+            System.err.println("Failed to register circuit breaker metrics: " + e);
+        }
+        return breaker;
+    }
+
+    // === CircuitBreakerMXBean ===
+
+    @Override
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    @Override
+    public synchronized String getState() {
+        return state.name();
+    }
+
+    @Override
+    public synchronized double getFailureRate() {
+        return failureRate();
+    }
+
+    @Override
+    public synchronized int getBufferedCalls() {
+        return windowCalls;
+    }
+
+    @Override
+    public synchronized long getSuccessfulCalls() {
+        return successfulCalls;
+    }
+
+    @Override
+    public synchronized long getFailedCalls() {
+        return failedCalls;
+    }
+
+    @Override
+    public synchronized long getSlowCalls() {
+        return slowCalls;
+    }
+
+    @Override
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    @Override
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    /**
+     * The thresholds of a CircuitBreaker.
+     */
+    public static class Settings {
+
+        final double failureRateThreshold;
+        final long slowCallMillis;
+        final long openMillis;
+
+        /**
+         * @param failureRateThreshold the fraction of failed or slow calls in
+         *                             the window at which the circuit opens.
+         * @param slowCallMillis       calls taking longer than this count as
+         *                             failures.
+         * @param openMillis           how long the circuit stays open before
+         *                             allowing trial calls.
+         */
+        public Settings(final double failureRateThreshold, final long slowCallMillis, final long openMillis) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallMillis = slowCallMillis;
+            this.openMillis = openMillis;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * The JMX view of a Function's CircuitBreaker, registered as
+ * 'InvokeFunctionExample:type=CircuitBreaker,function=<function id>'.
+ */
+public interface CircuitBreakerMXBean {
+
+    String getFunctionId();
+
+    // One of CLOSED, OPEN or HALF_OPEN.
+    String getState();
+
+    // The fraction of calls in the sliding window which failed or were slow.
+    double getFailureRate();
+
+    int getBufferedCalls();
+
+    long getSuccessfulCalls();
+
+    long getFailedCalls();
+
+    long getSlowCalls();
+
+    long getRejectedCalls();
+
+    long getTimesOpened();
+}
@@ -0,0 +1,28 @@
+/**
+ * Thrown instead of invoking a Function whose circuit breaker is open.
+ */
+public class CircuitBreakerOpenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String functionId;
+    private final long retryAfterMillis;
+
+    /**
+     * @param functionId       the Function whose circuit is open.
+     * @param retryAfterMillis how long until the circuit allows a trial call.
+     */
+    public CircuitBreakerOpenException(final String functionId, final long retryAfterMillis) {
+        super("Circuit breaker open for function " + functionId + ", retry after " + retryAfterMillis + "ms");
+        this.functionId = functionId;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
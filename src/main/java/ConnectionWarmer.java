@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import com.oracle.bmc.http.ClientConfigurator;
+
+/**
+ * Keeps the connections to resolved function endpoints warm, so the first
+ * invocation after startup, or after a quiet spell, does not pay for a DNS
+ * lookup and a TCP and TLS handshake.
+ *
+ * As soon as a Function's invoke endpoint is known its host is resolved, and
+ * then re-resolved in the background well within the JVM's DNS cache TTL (30s
+ * by default), so a lookup on the request path always hits the cache and still
+ * follows DNS changes.
+ *
+ * A few requests are sent to the endpoint concurrently, and repeated
+ * periodically, to hold a minimum number of idle connections open for the
+ * invocations which follow. The requests are unauthenticated GETs of '/',
+ * which the endpoint rejects without invoking anything.
+ *
+ * - The SDK's invoke client pools idle connections in the JDK's keep-alive
+ * cache, which is keyed by the TLS socket factory as well as the host, so an
+ * invoke client created while warming is enabled is configured with the JVM's
+ * default socket factory, which the warming requests share. The JDK closes
+ * idle connections after 5s, and holds up to 'http.maxConnections' (default
+ * 5) per host, so the warming interval must stay within the first, and the
+ * minimum within the second; 'main' raises 'http.maxConnections' to the
+ * minimum if it is lower.
+ *
+ * - The HTTP/2 invoke transport, once created, is warmed through its own
+ * client; it multiplexes every invocation of an endpoint over one connection,
+ * so one request keeps that connection open.
+ *
+ * Warming is disabled, and 'warm' does nothing, until enabled.
+ */
+public class ConnectionWarmer {
+
+    final static String WARM_PATH = "/";
+    final static int WARM_TIMEOUT_MILLIS = 10000;
+
+    // Null when warming is disabled, the default.
+    private static volatile Settings settings;
+
+    private final static ConcurrentMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    private final static List<Http2InvokeTransport> HTTP2_TRANSPORTS = new CopyOnWriteArrayList<>();
+
+    private static ScheduledExecutorService scheduler;
+    private static ExecutorService requests;
+
+    /**
+     * Enables, or disables, warming of the endpoints resolved from now on.
+     *
+     * @param warmSettings the settings, or null to disable warming.
+     */
+    public static synchronized void setSettings(final Settings warmSettings) {
+        settings = warmSettings;
+        if (warmSettings != null && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "connection-warmer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            requests = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "connection-warmer-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public static boolean isEnabled() {
+        return settings != null;
+    }
+
+    /**
+     * Starts keeping an invoke endpoint warm, if warming is enabled and it is
+     * not already warm.
+     *
+     * @param invokeEndpoint the endpoint, e.g. 'https://abc.us-phoenix-1.functions.oci.oraclecloud.com'.
+     */
+    public static void warm(final String invokeEndpoint) {
+        final Settings warmSettings = settings;
+        if (warmSettings == null || invokeEndpoint == null) {
+            return;
+        }
+        ENDPOINTS.computeIfAbsent(invokeEndpoint, endpoint -> start(URI.create(endpoint), warmSettings));
+    }
+
+    /**
+     * Warms the endpoints through an HTTP/2 invoke transport as well as the
+     * SDK's invoke client.
+     *
+     * @param transport the transport.
+     */
+    public static void addTransport(final Http2InvokeTransport transport) {
+        HTTP2_TRANSPORTS.add(transport);
+        final Settings warmSettings = settings;
+        if (warmSettings != null) {
+            for (final Endpoint endpoint : ENDPOINTS.values()) {
+                requests.execute(() -> warmHttp2(transport, endpoint));
+            }
+        }
+    }
+
+    /**
+     * Stops warming through an HTTP/2 invoke transport, e.g. as it is closed.
+     *
+     * @param transport the transport.
+     */
+    public static void removeTransport(final Http2InvokeTransport transport) {
+        HTTP2_TRANSPORTS.remove(transport);
+    }
+
+    /**
+     * @return a configurator which makes a client use the JVM's default TLS
+     *         socket factory, and so share pooled connections with warming.
+     */
+    static ClientConfigurator sharedSocketFactory() {
+        final SSLContext sslContext = sharedSslContext();
+        return new ClientConfigurator() {
+
+            @Override
+            public void customizeBuilder(final ClientBuilder builder) {
+                builder.sslContext(sslContext);
+            }
+
+            @Override
+            public void customizeClient(final Client client) {
+            }
+        };
+    }
+
+    private static Endpoint start(final URI uri, final Settings warmSettings) {
+        final Endpoint endpoint = new Endpoint(uri);
+        scheduler.scheduleWithFixedDelay(
+            () -> resolve(endpoint), 0L, warmSettings.dnsRefreshMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(
+            () -> requests.execute(() -> warmAll(endpoint, warmSettings)),
+            0L, warmSettings.intervalMillis, TimeUnit.MILLISECONDS);
+        return endpoint;
+    }
+
+    private static void resolve(final Endpoint endpoint) {
+        try {
+            InetAddress.getAllByName(endpoint.uri.getHost());
+            endpoint.succeeded("DNS");
+        } catch (final UnknownHostException e) {
+            endpoint.failed("DNS", e);
+        }
+    }
+
+    private static void warmAll(final Endpoint endpoint, final Settings warmSettings) {
+        // A slow endpoint is warmed by one round of requests at a time.
+        if (!endpoint.warming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            warmJersey(endpoint, warmSettings);
+            for (final Http2InvokeTransport transport : HTTP2_TRANSPORTS) {
+                warmHttp2(transport, endpoint);
+            }
+        } finally {
+            endpoint.warming.set(false);
+        }
+    }
+
+    /**
+     * Sends 'minIdle' requests at once, so each takes or opens its own
+     * connection and leaves it idle in the keep-alive cache.
+     */
+    private static void warmJersey(final Endpoint endpoint, final Settings warmSettings) {
+        final List<CompletableFuture<Void>> warming = new ArrayList<>();
+        for (int i = 0; i < warmSettings.minIdle; i++) {
+            warming.add(CompletableFuture.runAsync(() -> {
+                try {
+                    request(endpoint.uri.resolve(WARM_PATH));
+                    endpoint.succeeded("connection");
+                } catch (final IOException e) {
+                    endpoint.failed("connection", e);
+                }
+            }, requests));
+        }
+        CompletableFuture.allOf(warming.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void warmHttp2(final Http2InvokeTransport transport, final Endpoint endpoint) {
+        // The transport holds a single connection per endpoint; one request keeps it open.
+        try {
+            transport.warm(endpoint.uri.resolve(WARM_PATH)).get(WARM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            endpoint.succeeded("HTTP/2 connection");
+        } catch (final Exception e) {
+            endpoint.failed("HTTP/2 connection", e);
+        }
+    }
+
+    /**
+     * Makes a request and reads the whole response, so the JDK returns the
+     * connection to its keep-alive cache rather than closing it.
+     */
+    private static void request(final URI uri) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        connection.setConnectTimeout(WARM_TIMEOUT_MILLIS);
+        connection.setReadTimeout(WARM_TIMEOUT_MILLIS);
+        connection.setRequestMethod("GET");
+        final int status = connection.getResponseCode();
+        try (final InputStream body = (status >= 400) ? connection.getErrorStream() : connection.getInputStream()) {
+            if (body != null) {
+                final byte[] buffer = new byte[4096];
+                while (body.read(buffer) != -1) {
+                    // Discard the response.
+                }
+            }
+        }
+    }
+
+    /**
+     * An SSLContext like the JVM default, whose socket factory is the one
+     * HttpsURLConnection uses by default, which keys its keep-alive cache.
+     */
+    private static SSLContext sharedSslContext() {
+        final SSLContext delegate;
+        try {
+            delegate = SSLContext.getDefault();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No default TLS context", e);
+        }
+        final SSLSocketFactory socketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+
+        return new SSLContext(new SSLContextSpi() {
+
+            @Override
+            protected void engineInit(final KeyManager[] km, final TrustManager[] tm, final SecureRandom random)
+                throws KeyManagementException {
+
+                throw new KeyManagementException("The default TLS context is already initialised");
+            }
+
+            @Override
+            protected SSLSocketFactory engineGetSocketFactory() {
+                return socketFactory;
+            }
+
+            @Override
+            protected SSLServerSocketFactory engineGetServerSocketFactory() {
+                return delegate.getServerSocketFactory();
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine() {
+                return delegate.createSSLEngine();
+            }
+
+            @Override
+            protected SSLEngine engineCreateSSLEngine(final String host, final int port) {
+                return delegate.createSSLEngine(host, port);
+            }
+
+            @Override
+            protected SSLSessionContext engineGetServerSessionContext() {
+                return delegate.getServerSessionContext();
+            }
+
+            @Override
+            protected SSLSessionContext engineGetClientSessionContext() {
+                return delegate.getClientSessionContext();
+            }
+        }, delegate.getProvider(), delegate.getProtocol()) {
+        };
+    }
+
+    /**
+     * A warmed endpoint, which reports a failure once rather than on every
+     * attempt.
+     */
+    static class Endpoint {
+
+        final URI uri;
+        final AtomicBoolean warming = new AtomicBoolean();
+        private final ConcurrentMap<String, String> errors = new ConcurrentHashMap<>();
+
+        Endpoint(final URI uri) {
+            this.uri = uri;
+        }
+
+        void succeeded(final String what) {
+            if (errors.remove(what) != null) {
+                System.err.println("Warming " + what + " to " + uri + " recovered");
+            }
+        }
+
+        void failed(final String what, final Exception e) {
+            final String error = e.toString();
+            if (!Objects.equals(errors.put(what, error), error)) {
+                System.err.println("Failed to warm " + what + " to " + uri + ": " + error);
+            }
+        }
+    }
+
+    /**
+     * How warm to keep each endpoint.
+     */
+    public static class Settings {
+
+        final int minIdle;
+        final long intervalMillis;
+        final long dnsRefreshMillis;
+
+        /**
+         * @param minIdle          the idle connections to keep open per
+         *                         endpoint.
+         * @param intervalMillis   how often to re-open idle connections which
+         *                         have been closed.
+         * @param dnsRefreshMillis how often to re-resolve each endpoint.
+         */
+        public Settings(final int minIdle, final long intervalMillis, final long dnsRefreshMillis) {
+            this.minIdle = minIdle;
+            this.intervalMillis = intervalMillis;
+            this.dnsRefreshMillis = dnsRefreshMillis;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.model.BmcException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A long-running daemon which invokes the example function on behalf of local
+ * clients.
+ *
+ * The daemon keeps the service clients, the parsed signing key and the
+ * resolved function endpoint warm, so a request costs one HTTP round trip to
+ * the function rather than a JVM start and a function lookup. It listens on a
+ * loopback port:
+ *
+ * - 'POST /invoke': invokes the function with the request body as the payload
+ * and responds with the function's response.
+ *
+ * - 'GET /health': responds with the resolved function endpoint.
+ *
+ * Invocations are queued in an InvocationScheduler. A request may set
+ * 'X-Priority: batch' to be served only when no interactive request is
+ * waiting, and 'X-Deadline-Ms' to say how long it is willing to wait for the
+ * response; a request whose deadline passes before it is sent is answered
+ * with a 504 without invoking the function.
+ *
+ * Any client which can POST to localhost can forward a payload, e.g.
+ * 'curl --data-binary @payload.json http://127.0.0.1:8089/invoke'.
+ *
+ * > NB: Run with '-Dsun.net.httpserver.nodelay=true', as 'make run-daemon'
+ * does, or Nagle's algorithm adds ~40ms to every small response. The JDK
+ * reads it once, so it must be set when the JVM starts.
+ */
+public class FunctionDaemon implements AutoCloseable {
+
+    private final ServiceClients clients;
+    private final String compartmentId;
+    private final String name;
+
+    private final long defaultDeadlineMillis;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final InvocationScheduler scheduler;
+
+    private volatile InvokeRequestTemplate template;
+
+    /**
+     * Resolves the example function and starts listening.
+     *
+     * @param clients        the service clients to use, in the region in which
+     *                       the function exists.
+     * @param compartmentId  the compartment in which the function exists.
+     * @param name           a name prefix to easilly identifty the resources.
+     * @param port           the loopback port to listen on.
+     * @param threads        the number of invocations to send concurrently.
+     * @param deadlineMillis the deadline of requests which do not set one.
+     * @throws Exception
+     */
+    public FunctionDaemon(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final int port,
+        final int threads,
+        final long deadlineMillis
+        ) throws Exception {
+
+        this.clients = clients;
+        this.compartmentId = compartmentId;
+        this.name = name;
+        this.defaultDeadlineMillis = Math.min(deadlineMillis, InvocationScheduler.MAX_TIMEOUT_MILLIS);
+        this.template = resolve();
+        this.scheduler = new InvocationScheduler(threads);
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Handlers only wait on the scheduler, which bounds the invocations in flight.
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(executor);
+        this.server.createContext("/invoke", this::invoke);
+        this.server.createContext("/health", this::health);
+        this.server.start();
+    }
+
+    /**
+     * Serves the example function until the JVM is shut down.
+     *
+     * @param clients        the service clients to use, in the region in which
+     *                       the function exists.
+     * @param compartmentId  the compartment in which the function exists.
+     * @param name           a name prefix to easilly identifty the resources.
+     * @param port           the loopback port to listen on.
+     * @param threads        the number of invocations to send concurrently.
+     * @param deadlineMillis the deadline of requests which do not set one.
+     * @throws Exception
+     */
+    public static void serve(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final int port,
+        final int threads,
+        final long deadlineMillis
+        ) throws Exception {
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+        try (final FunctionDaemon daemon = new FunctionDaemon(clients, compartmentId, name, port, threads, deadlineMillis)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+            System.out.println("Serving function endpoint - " + daemon.template.getInvokeEndpoint()
+                + " on " + daemon.getAddress());
+            stopped.await();
+        }
+    }
+
+    /**
+     * @return the base URL the daemon is listening on.
+     */
+    public String getAddress() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.close();
+        executor.shutdownNow();
+    }
+
+    private InvokeRequestTemplate resolve() throws Exception {
+        final FunctionSummary fn = InvokeFunctionExample.getUniqueFunctionByName(
+            clients.functionsManagement(),
+            compartmentId,
+            InvokeFunctionExample.applicationName(name),
+            InvokeFunctionExample.functionName(name));
+        return new InvokeRequestTemplate(clients.functionsInvoke(fn.getInvokeEndpoint()), fn);
+    }
+
+    private void invoke(final HttpExchange exchange) throws IOException {
+        // Set once the response starts streaming; after that it can only be cut short.
+        final AtomicBoolean streaming = new AtomicBoolean();
+        try (final InputStream in = exchange.getRequestBody()) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Use POST to invoke the function\n");
+                return;
+            }
+            final byte[] payload = IOUtils.toByteArray(in);
+
+            final InvocationScheduler.Priority priority;
+            final long deadlineNanos;
+            try {
+                priority = priority(exchange);
+                deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis(exchange));
+            } catch (final IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            InvokeRequestTemplate current = template;
+            try {
+                invoke(exchange, current, payload, priority, deadlineNanos, streaming);
+            } catch (final BmcException e) {
+                if (e.getStatusCode() != 404 || streaming.get()) {
+                    throw e;
+                }
+                // The function may have been re-created with a new id; resolve it again, once.
+                synchronized (this) {
+                    if (template == current) {
+                        template = resolve();
+                    }
+                    current = template;
+                }
+                invoke(exchange, current, payload, priority, deadlineNanos, streaming);
+            }
+        } catch (final Exception e) {
+            if (streaming.get()) {
+                System.err.println("Failed while streaming the function's response: " + e);
+            } else {
+                respond(exchange, e);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Responds with the status which best describes a failed invocation.
+     */
+    private static void respond(final HttpExchange exchange, final Exception error) throws IOException {
+        if (error instanceof CircuitBreakerOpenException) {
+            final long retryAfterMillis = ((CircuitBreakerOpenException) error).getRetryAfterMillis();
+            exchange.getResponseHeaders().set("Retry-After", Long.toString((retryAfterMillis + 999L) / 1000L));
+            respond(exchange, 503, error.getMessage() + "\n");
+        } else if (error instanceof TimeoutException) {
+            respond(exchange, 504, error.getMessage() + "\n");
+        } else if (error instanceof BmcException && ((BmcException) error).isTimeout()) {
+            respond(exchange, 504, "Deadline passed waiting for the function: " + error.getMessage() + "\n");
+        } else if (error instanceof BmcException) {
+            final int statusCode = ((BmcException) error).getStatusCode();
+            respond(exchange, (statusCode > 0) ? statusCode : 502, "Failed to invoke function: " + error.getMessage() + "\n");
+        } else {
+            respond(exchange, 502, "Failed to invoke function: " + error + "\n");
+        }
+    }
+
+    private void invoke(
+        final HttpExchange exchange,
+        final InvokeRequestTemplate template,
+        final byte[] payload,
+        final InvocationScheduler.Priority priority,
+        final long deadlineNanos,
+        final AtomicBoolean streaming
+        ) throws Exception {
+
+        final String functionId = template.getFunctionId();
+        final long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        try {
+            // The scheduler holds the invocation to the function's adaptive in-flight limit.
+            scheduler.submit(priority, timeoutMillis, functionId, readTimeoutMillis ->
+                CircuitBreaker.call(functionId, () ->
+                    template.invoke(payload, payload.length, body -> {
+                        // Stream the response through; its length is not known up front.
+                        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                        streaming.set(true);
+                        exchange.sendResponseHeaders(200, 0);
+                        return IOUtils.copyLarge(body, exchange.getResponseBody());
+                    }, readTimeoutMillis)))
+                .get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static InvocationScheduler.Priority priority(final HttpExchange exchange) {
+        final String priority = exchange.getRequestHeaders().getFirst("X-Priority");
+        if (priority == null) {
+            return InvocationScheduler.Priority.INTERACTIVE;
+        }
+        try {
+            return InvocationScheduler.Priority.valueOf(priority.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("X-Priority must be 'interactive' or 'batch'");
+        }
+    }
+
+    private long deadlineMillis(final HttpExchange exchange) {
+        final String deadline = exchange.getRequestHeaders().getFirst("X-Deadline-Ms");
+        if (deadline == null) {
+            return defaultDeadlineMillis;
+        }
+        try {
+            // Clamped, so the deadline it gives can be held as a 'System.nanoTime' value.
+            return Math.max(0L, Math.min(InvocationScheduler.MAX_TIMEOUT_MILLIS, Long.parseLong(deadline.trim())));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("X-Deadline-Ms must be a number of milliseconds");
+        }
+    }
+
+    private void health(final HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, template.getInvokeEndpoint() + "\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String message)
+        throws IOException {
+
+        final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
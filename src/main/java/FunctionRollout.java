@@ -0,0 +1,205 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.oracle.bmc.functions.FunctionsManagementClient;
+import com.oracle.bmc.functions.model.ApplicationSummary;
+import com.oracle.bmc.functions.model.Function;
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.functions.requests.ListFunctionsRequest;
+import com.oracle.bmc.functions.responses.ListFunctionsResponse;
+
+/**
+ * Rolls a new image out to every Function in an Application, in waves.
+ *
+ * The Functions of a wave are updated concurrently, each waiting for its
+ * update to become Active, and then health checked with an invocation. Only
+ * when every Function in a wave is healthy does the next wave start, so a bad
+ * image reaches at most one wave. If any update or health check fails, every
+ * Function updated so far is rolled back to its previous image and limits.
+ *
+ * A fleet of N Functions is therefore deployed in ceil(N / batchSize) waves
+ * rather than N sequential update waits.
+ */
+public class FunctionRollout {
+
+    private final FunctionsManagementClient fnManagementClient;
+    private final ServiceClients clients;
+    private final String image;
+    private final String healthCheckPayload;
+    private final ExecutorService executor;
+
+    // Guarded by 'this'. The original state of each Function updated so far.
+    private final List<FunctionSummary> updated = new ArrayList<>();
+
+    private FunctionRollout(
+        final ServiceClients clients,
+        final String image,
+        final String healthCheckPayload,
+        final int batchSize
+        ) {
+
+        this.clients = clients;
+        this.fnManagementClient = clients.functionsManagement();
+        this.image = image;
+        this.healthCheckPayload = healthCheckPayload;
+        this.executor = Executors.newFixedThreadPool(batchSize);
+    }
+
+    /**
+     * Roll an image out to every Function in the example application.
+     *
+     * @param clients            the service clients to use, in the region in
+     *                           which the functions exist.
+     * @param compartmentId      the compartment in which the functions exist.
+     * @param name               a name prefix to easilly identifty the resources.
+     * @param image              the OCIR image to roll out.
+     * @param batchSize          the number of Functions to update per wave.
+     * @param healthCheckPayload the payload to health check each Function with.
+     * @throws Exception if the rollout failed and was rolled back.
+     */
+    public static void rollout(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String image,
+        final int batchSize,
+        final String healthCheckPayload
+        ) throws Exception {
+
+        final FunctionsManagementClient fnManagementClient = clients.functionsManagement();
+        final ApplicationSummary application = InvokeFunctionExample.getUniqueApplicationByName(
+            fnManagementClient, compartmentId, InvokeFunctionExample.applicationName(name));
+
+        final List<FunctionSummary> fleet = new ArrayList<>();
+        for (final FunctionSummary fn : listFunctions(fnManagementClient, application.getId())) {
+            if (fn.getLifecycleState() == Function.LifecycleState.Active && !image.equals(fn.getImage())) {
+                fleet.add(fn);
+            }
+        }
+        System.out.println("Rolling out " + image + " to " + fleet.size() + " function(s) in "
+            + application.getDisplayName() + ", " + batchSize + " at a time");
+
+        final FunctionRollout rollout = new FunctionRollout(clients, image, healthCheckPayload, batchSize);
+        try {
+            rollout.run(fleet, batchSize);
+        } finally {
+            rollout.close();
+        }
+    }
+
+    private void run(final List<FunctionSummary> fleet, final int batchSize) throws Exception {
+        for (int start = 0; start < fleet.size(); start += batchSize) {
+            final List<FunctionSummary> wave = fleet.subList(start, Math.min(start + batchSize, fleet.size()));
+            System.out.println("Wave " + (start / batchSize + 1) + ": updating " + wave.size() + " function(s)");
+
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            for (final FunctionSummary fn : wave) {
+                tasks.add(() -> {
+                    updateAndCheck(fn);
+                    return null;
+                });
+            }
+
+            final Exception failure = awaitAll(tasks);
+            if (failure != null) {
+                System.err.println("Rollout failed, rolling back: " + failure);
+                rollback();
+                throw new Exception("Rollout of " + image + " failed and was rolled back", failure);
+            }
+        }
+        System.out.println("Rolled out " + image + " to " + fleet.size() + " function(s)");
+    }
+
+    private void updateAndCheck(final FunctionSummary fn) throws Exception {
+        synchronized (this) {
+            updated.add(fn);
+        }
+        InvokeFunctionExample.updateFunction(
+            fnManagementClient, fn.getId(), image, fn.getMemoryInMBs(), fn.getTimeoutInSeconds());
+
+        // Bypass any response cache; the health check must reach the new image.
+        try {
+            InvokeFunctionExample.invokeFunction(
+                clients.functionsInvoke(fn.getInvokeEndpoint()), fn, healthCheckPayload, ResponseSinks.toUtf8String());
+        } catch (final Exception e) {
+            throw new Exception("Health check of " + fn.getDisplayName() + " failed", e);
+        }
+        System.out.println("Updated and health checked: " + fn.getDisplayName());
+    }
+
+    private void rollback() throws Exception {
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        synchronized (this) {
+            for (final FunctionSummary original : updated) {
+                tasks.add(() -> {
+                    InvokeFunctionExample.updateFunction(
+                        fnManagementClient,
+                        original.getId(),
+                        original.getImage(),
+                        original.getMemoryInMBs(),
+                        original.getTimeoutInSeconds());
+                    System.out.println("Rolled back: " + original.getDisplayName() + " to " + original.getImage());
+                    return null;
+                });
+            }
+        }
+
+        final Exception failure = awaitAll(tasks);
+        if (failure != null) {
+            throw new Exception("Rollback failed; check the function images manually", failure);
+        }
+    }
+
+    /**
+     * Runs the tasks concurrently and waits for all of them.
+     *
+     * @return the first failure, or null if all succeeded.
+     */
+    private Exception awaitAll(final Collection<Callable<Void>> tasks) throws InterruptedException {
+        Exception failure = null;
+        for (final Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        return failure;
+    }
+
+    private void close() {
+        executor.shutdownNow();
+    }
+
+    private static List<FunctionSummary> listFunctions(
+        final FunctionsManagementClient fnManagementClient,
+        final String applicationId
+        ) throws Exception {
+
+        final List<FunctionSummary> functions = new ArrayList<>();
+        String page = null;
+        do {
+            final ListFunctionsRequest listFunctionsRequest =
+                ListFunctionsRequest.builder()
+                    .applicationId(applicationId)
+                    .page(page)
+                    .build();
+            final ListFunctionsResponse listFunctionsResponse = Tracer.request("ListFunctions", span -> {
+                final ListFunctionsResponse response = fnManagementClient.listFunctions(listFunctionsRequest);
+                span.setRequestId(response.getOpcRequestId());
+                return response;
+            });
+            functions.addAll(listFunctionsResponse.getItems());
+            page = listFunctionsResponse.getOpcNextPage();
+        } while (page != null);
+        return functions;
+    }
+}
@@ -0,0 +1,488 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+/**
+ * Tails NDJSON records from a file, or from every file in a spool directory,
+ * into invocations of the example function.
+ *
+ * Each non-blank line is one record and is passed to the function as its
+ * payload. Records are invoked on a bounded pool of workers, and reading
+ * pauses while too many are outstanding. Each result is appended to the output
+ * file as a JSON line holding the record's source file, its byte offset, and
+ * the function's response (or the error).
+ *
+ * The offset of each source file up to which every record has completed is
+ * checkpointed to disk, after the output has been flushed, so a restarted
+ * tailer resumes where it left off. Records in flight at a crash are invoked
+ * again on restart; delivery is at-least-once.
+ *
+ * Each file's offset is held with its identity (its 'fileKey', such as the
+ * device and inode, or its creation time where there is none), so a file
+ * replaced under the same name is read from the start, as is one which
+ * shrank. Files which have been deleted are forgotten once their records have
+ * completed.
+ *
+ * > NB: A file system may reuse the identity of a deleted file for a new one;
+ * a replacement which reuses it and is already longer than the old file's
+ * offset is read from that offset.
+ */
+public class FunctionTailer implements AutoCloseable {
+
+    final static long CHECKPOINT_INTERVAL_MILLIS = 1000L;
+    final static long POLL_INTERVAL_MILLIS = 1000L;
+
+    // Records read ahead of the workers, per worker.
+    final static int READ_AHEAD = 2;
+
+    private final Invoker invoker;
+    private final Path source;
+    private final Path checkpointFile;
+    private final Path outputFile;
+
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final Writer outputWriter;
+    private final JsonGenerator output;
+
+    private final Map<Path, Progress> progress = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param invoker        the Invoker to pass each record to.
+     * @param source         an NDJSON file, or a directory of NDJSON files.
+     * @param outputFile     the file to append results to.
+     * @param checkpointFile the file to checkpoint offsets to.
+     * @param parallelism    the number of records to invoke concurrently.
+     * @throws IOException if the checkpoint could not be read, or the output
+     *                     file could not be opened.
+     */
+    public FunctionTailer(
+        final Invoker invoker,
+        final Path source,
+        final Path outputFile,
+        final Path checkpointFile,
+        final int parallelism
+        ) throws IOException {
+
+        this.invoker = invoker;
+        this.source = source.toAbsolutePath();
+        this.outputFile = outputFile.toAbsolutePath();
+        this.checkpointFile = checkpointFile.toAbsolutePath();
+
+        this.workers = Executors.newFixedThreadPool(parallelism);
+        this.permits = new Semaphore(parallelism * READ_AHEAD);
+
+        this.outputWriter = Files.newBufferedWriter(
+            this.outputFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        final JsonFactory jsonFactory = new JsonFactory();
+        jsonFactory.setRootValueSeparator(null);
+        this.output = jsonFactory.createGenerator(outputWriter);
+
+        loadCheckpoint();
+    }
+
+    /**
+     * Tail records into invocations of the example function.
+     *
+     * @param clients        the service clients to use, in the region in which
+     *                       the function exists.
+     * @param compartmentId  the compartment in which the function exists.
+     * @param name           a name prefix to easilly identifty the resources.
+     * @param source         an NDJSON file, or a directory of NDJSON files.
+     * @param outputFile     the file to append results to.
+     * @param checkpointFile the file to checkpoint offsets to.
+     * @param parallelism    the number of records to invoke concurrently.
+     * @param follow         whether to keep waiting for new records, until the
+     *                       JVM is shut down, or stop once caught up.
+     * @throws Exception
+     */
+    public static void tail(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String source,
+        final String outputFile,
+        final String checkpointFile,
+        final int parallelism,
+        final boolean follow
+        ) throws Exception {
+
+        final FunctionSummary fn = InvokeFunctionExample.getUniqueFunctionByName(
+            clients.functionsManagement(),
+            compartmentId,
+            InvokeFunctionExample.applicationName(name),
+            InvokeFunctionExample.functionName(name));
+
+        try (final FunctionTailer tailer = new FunctionTailer(
+                Invoker.of(clients, fn),
+                Paths.get(source), Paths.get(outputFile), Paths.get(checkpointFile), parallelism)) {
+
+            System.out.println("Tailing " + source + " into function endpoint - " + fn.getInvokeEndpoint());
+
+            final CountDownLatch drained = new CountDownLatch(1);
+            final Thread shutdownHook = new Thread(() -> {
+                tailer.stop();
+                try {
+                    drained.await(30, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            try {
+                tailer.run(follow);
+            } finally {
+                drained.countDown();
+            }
+            if (!follow) {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            System.out.println("Results written to: " + outputFile);
+        }
+    }
+
+    /**
+     * Reads and invokes records until caught up, or, when following, until
+     * stopped. Outstanding records are completed and a final checkpoint
+     * written before returning.
+     *
+     * @param follow whether to keep waiting for new records.
+     * @throws Exception
+     */
+    public void run(final boolean follow) throws Exception {
+        final Path watched = Files.isDirectory(source) ? source : source.getParent();
+
+        try (final WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            watched.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            long lastCheckpoint = System.nanoTime();
+            while (running) {
+                final boolean readAny = readAll();
+
+                if (System.nanoTime() - lastCheckpoint > TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_INTERVAL_MILLIS)) {
+                    checkpoint();
+                    lastCheckpoint = System.nanoTime();
+                }
+
+                if (!readAny) {
+                    if (!follow) {
+                        break;
+                    }
+                    // Wake on a change to the source, or poll in case a change was missed.
+                    final WatchKey key = watcher.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                }
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(2, TimeUnit.MINUTES);
+            checkpoint();
+        }
+    }
+
+    /**
+     * Stops following once the records already read have completed.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        synchronized (output) {
+            output.close();
+            outputWriter.close();
+        }
+    }
+
+    /**
+     * Reads any new complete records from each source file.
+     *
+     * @return whether any record was read.
+     */
+    private boolean readAll() throws IOException, InterruptedException {
+        final List<Path> files = sourceFiles();
+        boolean readAny = false;
+        for (final Path file : files) {
+            readAny |= read(file);
+        }
+
+        // Forget deleted files, once nothing of theirs is still to be checkpointed.
+        progress.entrySet().removeIf(entry -> !files.contains(entry.getKey()) && entry.getValue().isIdle());
+        return readAny;
+    }
+
+    private List<Path> sourceFiles() throws IOException {
+        if (!Files.isDirectory(source)) {
+            return Files.exists(source) ? Collections.singletonList(source) : Collections.<Path>emptyList();
+        }
+
+        final List<Path> files = new ArrayList<>();
+        try (final DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+            for (final Path entry : entries) {
+                final Path file = entry.toAbsolutePath();
+                if (Files.isRegularFile(file)
+                    && !file.getFileName().toString().startsWith(".")
+                    && !file.equals(outputFile)
+                    && !file.equals(checkpointFile)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Submits every complete line of a file after its read position.
+     */
+    private boolean read(final Path file) throws IOException, InterruptedException {
+        final String identity = identity(file);
+        Progress fileProgress = progress.computeIfAbsent(file, f -> new Progress(0L, identity));
+        if (fileProgress.identity != null && !fileProgress.identity.equals(identity)) {
+            System.err.println("Source file was replaced, reading from the start: " + file);
+            fileProgress = new Progress(0L, identity);
+            progress.put(file, fileProgress);
+        }
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = fileProgress.readPosition();
+            if (channel.size() < position) {
+                // The file was truncated; start again from the beginning.
+                System.err.println("Source file shrank, re-reading from the start: " + file);
+                fileProgress = new Progress(0L, identity);
+                progress.put(file, fileProgress);
+                position = 0L;
+            } else if (fileProgress.identity == null) {
+                // Checkpointed before identities were recorded; trust the offset, and record this one.
+                fileProgress = fileProgress.withIdentity(identity);
+                progress.put(file, fileProgress);
+            }
+            if (channel.size() == position) {
+                return false;
+            }
+
+            channel.position(position);
+            final InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            boolean readAny = false;
+
+            int b;
+            while (running && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                final long start = position;
+                final long end = position + line.size() + 1;
+                final String record = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+                line.reset();
+                position = end;
+                readAny = true;
+
+                if (record.isEmpty()) {
+                    fileProgress.skipped(end);
+                } else {
+                    submit(file, fileProgress, start, end, record);
+                }
+            }
+            // Any trailing partial line is left for the next read.
+            return readAny;
+        }
+    }
+
+    /**
+     * @return what identifies a file, whatever its name: its key where the file
+     *         system has one, or else its creation time.
+     */
+    private static String identity(final Path file) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return (attributes.fileKey() != null)
+            ? attributes.fileKey().toString()
+            : attributes.creationTime().toString();
+    }
+
+    private void submit(
+        final Path file,
+        final Progress fileProgress,
+        final long start,
+        final long end,
+        final String record
+        ) throws InterruptedException {
+
+        permits.acquire();
+        fileProgress.started(start, end);
+        workers.execute(() -> {
+            try {
+                String response = null;
+                String error = null;
+                try {
+                    response = invoker.invoke(record);
+                } catch (final Exception e) {
+                    error = e.toString();
+                }
+                writeResult(file, start, response, error);
+            } finally {
+                fileProgress.completed(start);
+                permits.release();
+            }
+        });
+    }
+
+    private void writeResult(final Path file, final long offset, final String response, final String error) {
+        synchronized (output) {
+            try {
+                output.writeStartObject();
+                output.writeStringField("source", file.getFileName().toString());
+                output.writeNumberField("offset", offset);
+                if (error != null) {
+                    output.writeStringField("error", error);
+                } else {
+                    output.writeStringField("response", response);
+                }
+                output.writeEndObject();
+                output.writeRaw('\n');
+            } catch (final IOException e) {
+                System.err.println("Failed to write result for " + file + "@" + offset + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the output, then atomically replaces the checkpoint with the
+     * offset of each file up to which every record has completed, followed by
+     * the file's identity.
+     */
+    private void checkpoint() throws IOException {
+        synchronized (output) {
+            output.flush();
+        }
+
+        final Properties offsets = new Properties();
+        for (final Map.Entry<Path, Progress> entry : progress.entrySet()) {
+            final Progress fileProgress = entry.getValue();
+            offsets.setProperty(entry.getKey().toString(), (fileProgress.identity != null)
+                ? fileProgress.committed() + " " + fileProgress.identity
+                : Long.toString(fileProgress.committed()));
+        }
+
+        final Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (final OutputStream out = Files.newOutputStream(temporary)) {
+            offsets.store(out, "FunctionTailer offsets");
+        }
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return;
+        }
+        final Properties offsets = new Properties();
+        try (final InputStream in = Files.newInputStream(checkpointFile)) {
+            offsets.load(in);
+        }
+        for (final String file : offsets.stringPropertyNames()) {
+            // An offset alone was checkpointed before identities were recorded.
+            final String[] offset = offsets.getProperty(file).split(" ", 2);
+            progress.put(Paths.get(file), new Progress(
+                Long.parseLong(offset[0]), (offset.length > 1) ? offset[1] : null));
+        }
+    }
+
+    /**
+     * The read and completed offsets of a single source file.
+     */
+    static class Progress {
+
+        // The identity of the file read, or null if not yet known.
+        final String identity;
+
+        // The end of the last complete line read.
+        private long readPosition;
+
+        // Records submitted but not yet completed, start offset to end offset.
+        private final NavigableMap<Long, Long> inFlight = new TreeMap<>();
+
+        Progress(final long committed, final String identity) {
+            this.readPosition = committed;
+            this.identity = identity;
+        }
+
+        /**
+         * @return the progress of a file with no records in flight, now known
+         *         by its identity.
+         */
+        synchronized Progress withIdentity(final String identity) {
+            return new Progress(readPosition, identity);
+        }
+
+        synchronized long readPosition() {
+            return readPosition;
+        }
+
+        synchronized void started(final long start, final long end) {
+            inFlight.put(start, end);
+            readPosition = end;
+        }
+
+        synchronized void skipped(final long end) {
+            readPosition = end;
+        }
+
+        synchronized void completed(final long start) {
+            inFlight.remove(start);
+        }
+
+        synchronized boolean isIdle() {
+            return inFlight.isEmpty();
+        }
+
+        /**
+         * @return the offset before which every record has completed.
+         */
+        synchronized long committed() {
+            return inFlight.isEmpty() ? readPosition : inFlight.firstKey();
+        }
+    }
+}
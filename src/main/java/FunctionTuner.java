@@ -0,0 +1,313 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.bmc.Region;
+import com.oracle.bmc.auth.AuthenticationDetailsProvider;
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.FunctionsManagementClient;
+import com.oracle.bmc.functions.model.Function;
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Tunes the memory and timeout limits of a Function from observed invocation
+ * latency.
+ *
+ * Each memory tier is applied with 'UpdateFunction' and then exercised with a
+ * representative set of payloads. The first invocation after each update is
+ * recorded as the tier's cold start; the remaining invocations form the tier's
+ * latency distribution. The cheapest tier (in GB-seconds per invocation) that
+ * meets the target p95 is reported and, optionally, applied.
+ *
+ * > NB: Latencies are observed by the client, so include network time to the
+ * function endpoint.
+ */
+public class FunctionTuner {
+
+    final static long[] MEMORY_TIERS_IN_MBS = { 128L, 256L, 512L, 1024L };
+
+    final static int MIN_TIMEOUT_IN_SECONDS = 30;
+    final static int MAX_TIMEOUT_IN_SECONDS = 120;
+
+    // Warm invocations slower than this multiple of the median are counted as cold starts.
+    final static double COLD_START_FACTOR = 4.0;
+
+    /**
+     * Tune the memory and timeout limits of the example function.
+     *
+     * @param provider             the OCI credentials provider.
+     * @param region               the OCI region in which the function exists.
+     * @param compartmentId        the compartment in which the function exists.
+     * @param name                 a name prefix to easilly identifty the resources.
+     * @param payloads             a representative set of payloads to invoke
+     *                             each tier with.
+     * @param invocationsPerTier   the number of warm invocations per payload and
+     *                             tier.
+     * @param targetP95Millis      the p95 latency a tier must meet to be chosen.
+     * @param apply                whether to apply the chosen tier, or restore the
+     *                             original limits.
+     * @throws Exception
+     */
+    public static void tuneFunction(
+        final AuthenticationDetailsProvider provider,
+        final Region region,
+        final String compartmentId,
+        final String name,
+        final List<String> payloads,
+        final int invocationsPerTier,
+        final long targetP95Millis,
+        final boolean apply
+        ) throws Exception {
+
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            tuneFunction(clients, compartmentId, name, payloads, invocationsPerTier, targetP95Millis, apply);
+        }
+    }
+
+    /**
+     * Tune the memory and timeout limits of the example function.
+     *
+     * @param clients              the service clients to use, in the region in
+     *                             which the function exists.
+     * @param compartmentId        the compartment in which the function exists.
+     * @param name                 a name prefix to easilly identifty the resources.
+     * @param payloads             a representative set of payloads to invoke
+     *                             each tier with.
+     * @param invocationsPerTier   the number of warm invocations per payload and
+     *                             tier.
+     * @param targetP95Millis      the p95 latency a tier must meet to be chosen.
+     * @param apply                whether to apply the chosen tier, or restore the
+     *                             original limits.
+     * @throws Exception
+     */
+    public static void tuneFunction(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final List<String> payloads,
+        final int invocationsPerTier,
+        final long targetP95Millis,
+        final boolean apply
+        ) throws Exception {
+
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("At least one payload is required to tune a function");
+        }
+
+        final FunctionsManagementClient fnManagementClient = clients.functionsManagement();
+        final String appName = InvokeFunctionExample.applicationName(name);
+        final String fnName = InvokeFunctionExample.functionName(name);
+        final FunctionSummary fn =
+            InvokeFunctionExample.getUniqueFunctionByName(fnManagementClient, compartmentId, appName, fnName);
+        final FunctionsInvokeClient fnInvokeClient = clients.functionsInvoke(fn.getInvokeEndpoint());
+
+        final Function original = InvokeFunctionExample.getFunction(fnManagementClient, fn.getId());
+        System.out.println("Tuning function: " + original.getDisplayName()
+            + " (currently " + original.getMemoryInMBs() + "MB, " + original.getTimeoutInSeconds() + "s)");
+
+        final List<TierResult> results = new ArrayList<>();
+        try {
+            for (final long memoryInMBs : MEMORY_TIERS_IN_MBS) {
+                final TierResult result =
+                    measureTier(fnManagementClient, fnInvokeClient, fn, payloads, invocationsPerTier, memoryInMBs);
+                System.out.println(result);
+                results.add(result);
+            }
+        } catch (final Exception e) {
+            restore(fnManagementClient, original);
+            throw e;
+        }
+
+        final TierResult best = cheapestTierMeetingTarget(results, targetP95Millis);
+        if (best == null) {
+            System.out.println("No memory tier meets the target p95 of " + targetP95Millis + "ms");
+            restore(fnManagementClient, original);
+            return;
+        }
+
+        final int timeoutInSeconds = recommendedTimeoutInSeconds(best);
+        System.out.println("Recommended: " + best.memoryInMBs + "MB, " + timeoutInSeconds + "s");
+
+        if (apply) {
+            InvokeFunctionExample.updateFunction(
+                fnManagementClient, fn.getId(), null, best.memoryInMBs, timeoutInSeconds);
+            System.out.println("Applied: " + best.memoryInMBs + "MB, " + timeoutInSeconds + "s");
+        } else {
+            restore(fnManagementClient, original);
+        }
+    }
+
+    /**
+     * Applies a memory tier to a Function and records the latency of invoking
+     * it with each payload.
+     *
+     * @param fnManagementClient the service client to use to update the Function.
+     * @param fnInvokeClient     the service client to use to invoke the Function.
+     * @param fn                 the Function to measure.
+     * @param payloads           the payloads to invoke the Function with, at
+     *                           least one.
+     * @param invocationsPerTier the number of warm invocations per payload.
+     * @param memoryInMBs        the memory tier to measure.
+     * @return the latency distribution and cold start rate of the tier, with
+     *         no latencies if the cold start failed.
+     * @throws Exception
+     */
+    public static TierResult measureTier(
+        final FunctionsManagementClient fnManagementClient,
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final List<String> payloads,
+        final int invocationsPerTier,
+        final long memoryInMBs
+        ) throws Exception {
+
+        // Use the longest timeout while measuring so slow tiers are observed rather than cut off.
+        InvokeFunctionExample.updateFunction(
+            fnManagementClient, fn.getId(), null, memoryInMBs, MAX_TIMEOUT_IN_SECONDS);
+
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("At least one payload is required to measure a tier");
+        }
+
+        final TierResult result = new TierResult(memoryInMBs);
+
+        // The first invocation after an update always starts a new container.
+        // A tier too small to start (out of memory, or timed out) is recorded, not fatal.
+        try {
+            result.coldStartMicros = timeInvoke(fnInvokeClient, fn, payloads.get(0));
+        } catch (final Exception e) {
+            result.errors++;
+            System.out.println(memoryInMBs + "MB: cold start failed - " + e);
+            return result;
+        }
+
+        for (int i = 0; i < invocationsPerTier; i++) {
+            for (final String payload : payloads) {
+                try {
+                    result.latencies.recordValue(timeInvoke(fnInvokeClient, fn, payload));
+                } catch (final Exception e) {
+                    result.errors++;
+                }
+            }
+        }
+
+        if (result.latencies.getTotalCount() > 0) {
+            final long coldThreshold = (long) (result.latencies.getValueAtPercentile(50.0) * COLD_START_FACTOR);
+            result.coldStarts = result.latencies.getCountBetweenValues(
+                coldThreshold, result.latencies.getMaxValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Chooses the cheapest tier whose p95 latency meets the target.
+     *
+     * @param results         the measured tiers.
+     * @param targetP95Millis the p95 latency a tier must meet.
+     * @return the cheapest qualifying tier, or null if none qualify.
+     */
+    public static TierResult cheapestTierMeetingTarget(
+        final List<TierResult> results,
+        final long targetP95Millis
+        ) {
+
+        TierResult best = null;
+        for (final TierResult result : results) {
+            if (result.errors > 0 || result.latencies.getTotalCount() == 0) {
+                continue;
+            }
+            if (result.p95Millis() > targetP95Millis) {
+                continue;
+            }
+            if (best == null || result.gbSecondsPerInvocation() < best.gbSecondsPerInvocation()) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A timeout with twice the headroom of the slowest observed invocation,
+     * within the limits accepted by the Functions service.
+     */
+    static int recommendedTimeoutInSeconds(final TierResult result) {
+        final long slowestMicros = Math.max(result.latencies.getMaxValue(), result.coldStartMicros);
+        final int timeout = (int) Math.ceil(2.0 * slowestMicros / TimeUnit.SECONDS.toMicros(1));
+        return Math.max(MIN_TIMEOUT_IN_SECONDS, Math.min(MAX_TIMEOUT_IN_SECONDS, timeout));
+    }
+
+    private static long timeInvoke(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final String payload
+        ) throws Exception {
+
+        final long start = System.nanoTime();
+        // Always reach the function: a cached or coalesced response would time nothing.
+        InvokeFunctionExample.invokeFunction(fnInvokeClient, fn, payload, ResponseSinks.toUtf8String());
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private static void restore(
+        final FunctionsManagementClient fnManagementClient,
+        final Function original
+        ) throws Exception {
+
+        InvokeFunctionExample.updateFunction(
+            fnManagementClient,
+            original.getId(),
+            null,
+            original.getMemoryInMBs(),
+            original.getTimeoutInSeconds());
+        System.out.println("Restored: " + original.getMemoryInMBs() + "MB, " + original.getTimeoutInSeconds() + "s");
+    }
+
+    /**
+     * The observed behaviour of a Function at a single memory tier.
+     */
+    public static class TierResult {
+
+        final long memoryInMBs;
+
+        // Warm invocation latencies in microseconds.
+        final Histogram latencies = new Histogram(3);
+
+        long coldStartMicros;
+        long coldStarts;
+        long errors;
+
+        TierResult(final long memoryInMBs) {
+            this.memoryInMBs = memoryInMBs;
+        }
+
+        public double p95Millis() {
+            return latencies.getValueAtPercentile(95.0) / 1000.0;
+        }
+
+        public double coldStartRate() {
+            final long invocations = latencies.getTotalCount() + 1;
+            return (coldStarts + 1) / (double) invocations;
+        }
+
+        public double gbSecondsPerInvocation() {
+            return (memoryInMBs / 1024.0) * (latencies.getMean() / TimeUnit.SECONDS.toMicros(1));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%5dMB: p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms cold=%.1fms coldRate=%.2f errors=%d",
+                memoryInMBs,
+                latencies.getValueAtPercentile(50.0) / 1000.0,
+                p95Millis(),
+                latencies.getValueAtPercentile(99.0) / 1000.0,
+                latencies.getMaxValue() / 1000.0,
+                coldStartMicros / 1000.0,
+                coldStartRate(),
+                errors);
+        }
+    }
+}
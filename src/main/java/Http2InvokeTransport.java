@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.oracle.bmc.auth.AuthenticationDetailsProvider;
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.http.signing.RequestSigner;
+import com.oracle.bmc.http.signing.SigningStrategy;
+import com.oracle.bmc.model.BmcException;
+
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+
+/**
+ * A non-blocking invoke transport, as an alternative to the SDK's blocking
+ * Jersey client.
+ *
+ * Requests are sent by an Apache HttpClient 5 HTTP/2 async client on a few
+ * I/O reactor threads, so an in-flight invocation holds no thread. The client
+ * keeps one connection per endpoint and multiplexes concurrent invocations
+ * over it as streams, so the invocations in flight are bounded by the
+ * endpoint's concurrent stream limit rather than by a connection pool. HTTPS
+ * endpoints, such as every real invoke endpoint, agree on HTTP/2 through
+ * ALPN; plain HTTP endpoints, such as the load test's stub server, are
+ * spoken to in cleartext HTTP/2 (h2c) from the start.
+ *
+ * Requests are signed with the shared CachingRequestSigner, and, like the
+ * SDK's invoke operation, the payload is not signed. Error responses fail
+ * with a BmcException carrying the status code and 'opc-request-id', so
+ * circuit breaking and tracing treat both transports alike.
+ *
+ * Like the SDK client's read timeout, an invocation whose response has not
+ * arrived within the response timeout fails with a SocketTimeoutException
+ * and its stream is cancelled. The timeout is kept per invocation rather than
+ * on the connection, which other streams keep busy.
+ */
+public class Http2InvokeTransport implements AutoCloseable {
+
+    final static String INVOKE_PATH = "/20181201/functions/%s/actions/invoke";
+
+    // The SDK client's default read timeout.
+    final static int DEFAULT_RESPONSE_TIMEOUT_MILLIS = 60000;
+
+    private final RequestSigner signer;
+    private final CloseableHttpAsyncClient client;
+    private final int responseTimeoutMillis;
+    private final ScheduledThreadPoolExecutor timeouts;
+
+    /**
+     * @param provider              the OCI credentials provider.
+     * @param ioThreads             the number of I/O reactor threads.
+     * @param responseTimeoutMillis how long to wait for each response.
+     */
+    public Http2InvokeTransport(
+        final AuthenticationDetailsProvider provider,
+        final int ioThreads,
+        final int responseTimeoutMillis
+        ) {
+
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        this.timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "http2-invoke-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most invocations answer in time; drop their timeouts rather than hold them until due.
+        this.timeouts.setRemoveOnCancelPolicy(true);
+        this.signer = InvokeFunctionExample.REQUEST_SIGNER_FACTORY
+            .forStrategy(SigningStrategy.EXCLUDE_BODY)
+            .createRequestSigner(null, provider);
+        // HTTP/2 only: a pooling HTTP/1.1 client would lease a connection per request.
+        this.client = HttpAsyncClients.customHttp2()
+            .setH2Config(H2Config.custom()
+                .setPushEnabled(false)
+                .build())
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .build())
+            .build();
+        this.client.start();
+    }
+
+    /**
+     * Invokes a function without blocking, within the transport's response
+     * timeout.
+     *
+     * @param fn      the Function to invoke.
+     * @param payload the payload to pass to the function.
+     * @return the response from the function, decoded as UTF-8.
+     */
+    public CompletableFuture<String> invoke(final FunctionSummary fn, final String payload) {
+        return invoke(fn, payload.getBytes(StandardCharsets.UTF_8), responseTimeoutMillis);
+    }
+
+    /**
+     * Invokes a function without blocking, within the transport's response
+     * timeout.
+     *
+     * @param fn      the Function to invoke.
+     * @param payload the payload to pass to the function, sent unchanged.
+     * @return the response from the function, decoded as UTF-8.
+     */
+    public CompletableFuture<String> invoke(final FunctionSummary fn, final byte[] payload) {
+        return invoke(fn, payload, responseTimeoutMillis);
+    }
+
+    /**
+     * Invokes a function without blocking.
+     *
+     * @param fn                    the Function to invoke.
+     * @param payload               the payload to pass to the function.
+     * @param responseTimeoutMillis how long to wait for the response.
+     * @return the response from the function, decoded as UTF-8.
+     */
+    public CompletableFuture<String> invoke(
+        final FunctionSummary fn,
+        final String payload,
+        final int responseTimeoutMillis
+        ) {
+
+        return invoke(fn, payload.getBytes(StandardCharsets.UTF_8), responseTimeoutMillis);
+    }
+
+    /**
+     * Invokes a function without blocking.
+     *
+     * @param fn                    the Function to invoke.
+     * @param payload               the payload to pass to the function, sent
+     *                              unchanged.
+     * @param responseTimeoutMillis how long to wait for the response.
+     * @return the response from the function, decoded as UTF-8.
+     */
+    public CompletableFuture<String> invoke(
+        final FunctionSummary fn,
+        final byte[] payload,
+        final int responseTimeoutMillis
+        ) {
+
+        return Tracer.requestAsync("InvokeFunction", span -> {
+            span.setOcid(fn.getId());
+
+            final URI uri = URI.create(fn.getInvokeEndpoint() + String.format(INVOKE_PATH, fn.getId()));
+            final SimpleHttpRequest request = new SimpleHttpRequest("POST", uri);
+            final Map<String, List<String>> noHeaders = Collections.emptyMap();
+            for (final Map.Entry<String, String> header : signer.signRequest(uri, "POST", noHeaders, null).entrySet()) {
+                // The client sets the host itself, from the URI.
+                if (!"host".equals(header.getKey())) {
+                    request.setHeader(header.getKey(), header.getValue());
+                }
+            }
+            request.setBody(payload, ContentType.APPLICATION_OCTET_STREAM);
+
+            final CompletableFuture<String> response = new CompletableFuture<>();
+            final Future<SimpleHttpResponse> exchange = client.execute(request, new FutureCallback<SimpleHttpResponse>() {
+
+                @Override
+                public void completed(final SimpleHttpResponse result) {
+                    final Header opcRequestId = result.getFirstHeader(BmcException.OPC_REQUEST_ID_HEADER);
+                    final String requestId = (opcRequestId != null) ? opcRequestId.getValue() : null;
+                    span.setRequestId(requestId);
+
+                    final byte[] body = result.getBodyBytes();
+                    final String text = (body != null) ? new String(body, StandardCharsets.UTF_8) : "";
+                    if (result.getCode() >= 200 && result.getCode() < 300) {
+                        response.complete(text);
+                    } else {
+                        response.completeExceptionally(
+                            new BmcException(result.getCode(), null, text, requestId));
+                    }
+                }
+
+                @Override
+                public void failed(final Exception e) {
+                    response.completeExceptionally(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    response.cancel(false);
+                }
+            });
+
+            final ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+                if (response.completeExceptionally(new SocketTimeoutException(
+                        "No response within " + responseTimeoutMillis + "ms"))) {
+                    exchange.cancel(true);
+                }
+            }, responseTimeoutMillis, TimeUnit.MILLISECONDS);
+            response.whenComplete((result, error) -> timeout.cancel(false));
+            return response;
+        });
+    }
+
+    /**
+     * Sends an unauthenticated GET, which opens a connection to the endpoint,
+     * or keeps one open, without invoking anything. See ConnectionWarmer.
+     *
+     * @param uri the URI to request.
+     * @return the status code of the response.
+     */
+    public CompletableFuture<Integer> warm(final URI uri) {
+        final CompletableFuture<Integer> status = new CompletableFuture<>();
+        client.execute(new SimpleHttpRequest("GET", uri), new FutureCallback<SimpleHttpResponse>() {
+
+            @Override
+            public void completed(final SimpleHttpResponse result) {
+                status.complete(result.getCode());
+            }
+
+            @Override
+            public void failed(final Exception e) {
+                status.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                status.cancel(false);
+            }
+        });
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ConnectionWarmer.removeTransport(this);
+        client.close();
+        timeouts.shutdownNow();
+    }
+}
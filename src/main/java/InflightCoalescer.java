@@ -0,0 +1,116 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+/**
+ * Coalesces identical in-flight invocations of a Function.
+ *
+ * While an invocation of a Function with a payload is pending, later calls
+ * with the same Function and payload wait for its result instead of making
+ * their own request. Once it completes, the next such call invokes the
+ * Function again; nothing is cached.
+ *
+ * Coalescing changes how many times a Function runs, so it is enabled per
+ * Function, by id or display name, and only suits Functions which are safe
+ * to run once on behalf of several identical callers.
+ */
+public class InflightCoalescer {
+
+    final static String ALL_FUNCTIONS = "*";
+
+    private final static ConcurrentMap<String, CompletableFuture<String>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private static volatile Set<String> functions = Collections.emptySet();
+
+    /**
+     * Sets the Functions whose invocations are coalesced.
+     *
+     * @param functionIdsOrNames the ids or display names of the Functions, or
+     *                           '*' for all Functions.
+     */
+    public static void setFunctions(final Collection<String> functionIdsOrNames) {
+        functions = Collections.unmodifiableSet(new HashSet<>(functionIdsOrNames));
+    }
+
+    /**
+     * @param fn the Function.
+     * @return whether invocations of the Function are coalesced.
+     */
+    public static boolean isEnabled(final FunctionSummary fn) {
+        final Set<String> enabled = functions;
+        return enabled.contains(ALL_FUNCTIONS)
+            || enabled.contains(fn.getId())
+            || (fn.getDisplayName() != null && enabled.contains(fn.getDisplayName()));
+    }
+
+    /**
+     * Makes a call, or waits for an identical call already in flight.
+     * Calls are made directly if coalescing is not enabled for the Function.
+     *
+     * @param fn      the Function the call invokes.
+     * @param payload the payload the call passes to the Function.
+     * @param call    the call.
+     * @return the response.
+     * @throws Exception if the call, or the call waited for, fails.
+     */
+    public static String call(final FunctionSummary fn, final String payload, final Callable<String> call)
+        throws Exception {
+
+        if (!isEnabled(fn)) {
+            return call.call();
+        }
+
+        final String key = ResponseCache.key(fn.getId(), payload);
+        final CompletableFuture<String> pending = new CompletableFuture<>();
+        final CompletableFuture<String> inFlight = IN_FLIGHT.putIfAbsent(key, pending);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        try {
+            final String response = call.call();
+            // Detach before publishing, so callers arriving after the call completed make a fresh call.
+            IN_FLIGHT.remove(key, pending);
+            pending.complete(response);
+            return response;
+        } catch (final Exception e) {
+            IN_FLIGHT.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        } catch (final Error e) {
+            IN_FLIGHT.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of distinct invocations currently in flight.
+     */
+    public static int getInFlight() {
+        return IN_FLIGHT.size();
+    }
+
+    private static String await(final CompletableFuture<String> inFlight) throws Exception {
+        try {
+            return inFlight.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A queue of invocations, each with a priority and a deadline, served by a
+ * fixed number of workers.
+ *
+ * Workers always take interactive invocations before batch ones, and within a
+ * priority the invocation with the earliest deadline first, so a flood of
+ * batch work queues behind latency-sensitive calls rather than in front of
+ * them. An invocation whose deadline passes while it is queued is dropped
+ * without being sent, failing with a TimeoutException; one which is sent gets
+ * the time remaining to its deadline as its read timeout.
+ *
+ * An invocation of a Function with an adaptive in-flight limit is only taken
+ * off the queue once the limit has room for it. Each Function's invocations
+ * are queued separately: while one Function is at its limit its invocations
+ * stay queued, in order, and the workers go on to send those of other
+ * Functions, until the limiter says it has room again. So the limit never
+ * holds back an invocation which has already left the queue, and its read
+ * timeout is measured once it is sent.
+ */
+public class InvocationScheduler implements AutoCloseable {
+
+    // Longer deadlines are cut to this, so a deadline can never overflow 'System.nanoTime'.
+    final static long MAX_TIMEOUT_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The order in which queued invocations are sent.
+     */
+    public enum Priority {
+        // Sent first: someone is waiting on the response.
+        INTERACTIVE,
+        // Sent when no interactive invocation is queued.
+        BATCH
+    }
+
+    /**
+     * An invocation which honours a read timeout.
+     */
+    public interface Invocation<T> {
+
+        T invoke(int readTimeoutMillis) throws Exception;
+    }
+
+    private final static Comparator<Task<?>> ORDER = Comparator
+        .<Task<?>, Priority>comparing(task -> task.priority)
+        // Compared by their difference, as 'System.nanoTime' values must be, not their absolute values.
+        .thenComparing((Task<?> a, Task<?> b) -> Long.signum(a.deadlineNanos - b.deadlineNanos))
+        .thenComparingLong(task -> task.sequence);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when an invocation is queued, or a Function's limit has room.
+    private final Condition changed = lock.newCondition();
+    private final Runnable headroom = this::headroom;
+
+    // Guarded by 'lock'. The queued invocations of each limited Function, and of all unlimited ones under null.
+    private final Map<String, PriorityQueue<Task<?>>> queues = new HashMap<>();
+    // Guarded by 'lock'. The limiters listened to for headroom.
+    private final Map<String, AdaptiveLimiter> limiters = new HashMap<>();
+    private int queued;
+    private boolean closed;
+
+    private final ExecutorService workers;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * @param workerCount the number of invocations to send concurrently.
+     */
+    public InvocationScheduler(final int workerCount) {
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            final Thread thread = new Thread(runnable, "invocation-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Queues an invocation.
+     *
+     * @param priority      the priority of the invocation.
+     * @param timeoutMillis how long from now the response is wanted by.
+     * @param invocation    the invocation.
+     * @return the result of the invocation.
+     */
+    public <T> CompletableFuture<T> submit(
+        final Priority priority,
+        final long timeoutMillis,
+        final Invocation<T> invocation
+        ) {
+
+        return submit(priority, timeoutMillis, null, invocation);
+    }
+
+    /**
+     * Queues an invocation of a Function, to be sent once the Function's
+     * adaptive in-flight limit, if enabled, has room for it. The invocation
+     * itself must not wait on the limit.
+     *
+     * @param priority      the priority of the invocation.
+     * @param timeoutMillis how long from now the response is wanted by.
+     * @param functionId    the Function the invocation invokes, or null if
+     *                      it is not held to a limit.
+     * @param invocation    the invocation.
+     * @return the result of the invocation.
+     */
+    public <T> CompletableFuture<T> submit(
+        final Priority priority,
+        final long timeoutMillis,
+        final String functionId,
+        final Invocation<T> invocation
+        ) {
+
+        final AdaptiveLimiter limiter = (functionId != null) ? AdaptiveLimiter.forFunction(functionId) : null;
+        final Task<T> task = new Task<>(
+            priority,
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, MAX_TIMEOUT_MILLIS)),
+            sequence.getAndIncrement(),
+            limiter,
+            invocation);
+        final String key = (limiter != null) ? functionId : null;
+        lock.lock();
+        try {
+            if (closed) {
+                task.result.completeExceptionally(new CancellationException("The invocation scheduler was closed"));
+                return task.result;
+            }
+            if (limiter != null && limiters.putIfAbsent(key, limiter) == null) {
+                limiter.addHeadroomListener(headroom);
+            }
+            queues.computeIfAbsent(key, k -> new PriorityQueue<>(16, ORDER)).add(task);
+            queued++;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task.result;
+    }
+
+    /**
+     * @return the number of invocations waiting to be sent.
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of invocations sent.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return the number of invocations dropped because their deadline passed
+     *         while they were queued.
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * Stops the workers, cancelling any invocations still queued.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        final List<Task<?>> unsent = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (final PriorityQueue<Task<?>> functionQueue : queues.values()) {
+                unsent.addAll(functionQueue);
+            }
+            queues.clear();
+            queued = 0;
+            for (final AdaptiveLimiter limiter : limiters.values()) {
+                limiter.removeHeadroomListener(headroom);
+            }
+            limiters.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (final Task<?> task : unsent) {
+            task.result.completeExceptionally(new CancellationException("The invocation scheduler was closed"));
+        }
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                take().run();
+            }
+        } catch (final InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    /**
+     * Takes the first queued invocation, in order, which can be sent now,
+     * taking a place within its Function's limit, if it has one. Waits while
+     * there is none, and drops those whose deadline has passed.
+     */
+    private Task<?> take() throws InterruptedException {
+        final List<Task<?>> dropped = new ArrayList<>();
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                final long now = System.nanoTime();
+                final List<Task<?>> heads = new ArrayList<>(queues.size());
+                for (final PriorityQueue<Task<?>> functionQueue : queues.values()) {
+                    while (!functionQueue.isEmpty() && functionQueue.peek().isExpired(now)) {
+                        dropped.add(functionQueue.poll());
+                        queued--;
+                    }
+                    if (!functionQueue.isEmpty()) {
+                        heads.add(functionQueue.peek());
+                    }
+                }
+                heads.sort(ORDER);
+
+                // A Function at its limit is skipped until it has room, or its first invocation expires.
+                long waitNanos = Long.MAX_VALUE;
+                for (final Task<?> head : heads) {
+                    if (head.limiter == null || head.limiter.tryAcquire()) {
+                        final String key = (head.limiter != null) ? head.limiter.getFunctionId() : null;
+                        queues.get(key).poll();
+                        queued--;
+                        return head;
+                    }
+                    waitNanos = Math.min(waitNanos, head.deadlineNanos - now);
+                }
+
+                if (waitNanos == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(waitNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+            // Completed outside the lock, as whatever waits on them runs here.
+            for (final Task<?> task : dropped) {
+                task.expire();
+            }
+        }
+    }
+
+    private void headroom() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Task<T> {
+
+        final Priority priority;
+        final long deadlineNanos;
+        final long sequence;
+        final AdaptiveLimiter limiter;
+        final Invocation<T> invocation;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(
+            final Priority priority,
+            final long deadlineNanos,
+            final long sequence,
+            final AdaptiveLimiter limiter,
+            final Invocation<T> invocation
+            ) {
+
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.limiter = limiter;
+            this.invocation = invocation;
+        }
+
+        /**
+         * @return whether the task's deadline has passed.
+         */
+        boolean isExpired(final long now) {
+            // Nothing shorter than a millisecond is worth sending.
+            return deadlineNanos - now < TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * Fails the task, whose deadline has passed.
+         */
+        void expire() {
+            expired.incrementAndGet();
+            result.completeExceptionally(new TimeoutException("Deadline passed before the invocation was sent"));
+        }
+
+        /**
+         * Sends the invocation, in a place already taken within the limit, if
+         * any.
+         */
+        void run() {
+            sent.incrementAndGet();
+            // Measured once there is room to send the invocation, rather than when it was queued.
+            final long remainingNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), deadlineNanos - System.nanoTime());
+            final int readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            try {
+                result.complete((limiter != null)
+                    ? limiter.callAcquired(() -> invocation.invoke(readTimeoutMillis))
+                    : invocation.invoke(readTimeoutMillis));
+            } catch (final Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
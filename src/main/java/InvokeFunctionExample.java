@@ -1,10 +1,20 @@
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import javax.ws.rs.client.Invocation;
+
+import com.oracle.bmc.ClientConfiguration;
 import com.oracle.bmc.Region;
 import com.oracle.bmc.auth.AuthenticationDetailsProvider;
 import com.oracle.bmc.auth.ConfigFileAuthenticationDetailsProvider;
@@ -36,6 +46,7 @@ import com.oracle.bmc.core.requests.UpdateRouteTableRequest;
 import com.oracle.bmc.core.responses.CreateInternetGatewayResponse;
 import com.oracle.bmc.core.responses.CreateSubnetResponse;
 import com.oracle.bmc.core.responses.CreateVcnResponse;
+import com.oracle.bmc.core.responses.GetInternetGatewayResponse;
 import com.oracle.bmc.core.responses.GetSubnetResponse;
 import com.oracle.bmc.core.responses.GetVcnResponse;
 import com.oracle.bmc.core.responses.ListInternetGatewaysResponse;
@@ -51,6 +62,7 @@ import com.oracle.bmc.functions.model.CreateApplicationDetails;
 import com.oracle.bmc.functions.model.CreateFunctionDetails;
 import com.oracle.bmc.functions.model.Function;
 import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.functions.model.UpdateFunctionDetails;
 import com.oracle.bmc.functions.requests.CreateApplicationRequest;
 import com.oracle.bmc.functions.requests.CreateFunctionRequest;
 import com.oracle.bmc.functions.requests.DeleteApplicationRequest;
@@ -60,6 +72,7 @@ import com.oracle.bmc.functions.requests.GetFunctionRequest;
 import com.oracle.bmc.functions.requests.InvokeFunctionRequest;
 import com.oracle.bmc.functions.requests.ListApplicationsRequest;
 import com.oracle.bmc.functions.requests.ListFunctionsRequest;
+import com.oracle.bmc.functions.requests.UpdateFunctionRequest;
 import com.oracle.bmc.functions.responses.CreateApplicationResponse;
 import com.oracle.bmc.functions.responses.CreateFunctionResponse;
 import com.oracle.bmc.functions.responses.GetApplicationResponse;
@@ -67,23 +80,42 @@ import com.oracle.bmc.functions.responses.GetFunctionResponse;
 import com.oracle.bmc.functions.responses.InvokeFunctionResponse;
 import com.oracle.bmc.functions.responses.ListApplicationsResponse;
 import com.oracle.bmc.functions.responses.ListFunctionsResponse;
+import com.oracle.bmc.functions.responses.UpdateFunctionResponse;
+import com.oracle.bmc.http.ClientConfigurator;
+import com.oracle.bmc.http.signing.RequestSignerFactory;
+import com.oracle.bmc.http.signing.SigningStrategy;
 import com.oracle.bmc.identity.Identity;
-import com.oracle.bmc.identity.IdentityClient;
 import com.oracle.bmc.identity.model.AvailabilityDomain;
 import com.oracle.bmc.identity.requests.ListAvailabilityDomainsRequest;
 import com.oracle.bmc.identity.responses.ListAvailabilityDomainsResponse;
 import com.oracle.bmc.model.BmcException;
 import com.oracle.bmc.util.StreamUtils;
+import com.oracle.bmc.util.internal.Consumer;
 
-import org.apache.commons.io.IOUtils;
+import org.glassfish.jersey.client.ClientProperties;
 
 public class InvokeFunctionExample {
 
     final static Region DEFAULT_REGION = Region.US_PHOENIX_1;
 
+    // Shared by all invoke clients, so each private key is parsed once.
+    final static CachingRequestSigner.Factory REQUEST_SIGNER_FACTORY = new CachingRequestSigner.Factory();
+
     final static String SETUP = "setup";
     final static String INVOKE = "invoke";
     final static String TEARDOWN = "teardown";
+    final static String TUNE = "tune";
+    final static String LOADTEST = "loadtest";
+    final static String DAEMON = "daemon";
+    final static String TAIL = "tail";
+    final static String SCATTER = "scatter";
+    final static String FANOUT = "fanout";
+    final static String RECONCILE = "reconcile";
+    final static String ROLLOUT = "rollout";
+
+    final static long DEFAULT_MEMORY_IN_MBS = 128L;
+    final static String STARTUP_BENCHMARK_ENDPOINT = "https://startup-benchmark.invalid";
+    final static int DEFAULT_TIMEOUT_IN_SECONDS = 30;
 
     /**
      * This is a basic example of how to register and invoke a serverless Function
@@ -115,7 +147,8 @@ public class InvokeFunctionExample {
      * region.
      * 
      * > NB: Currently, after invoking a function we must wait 30 minutes before
-     * clearing down any supporting Subnets and VCN.
+     * clearing down any supporting Subnets and VCN. Commands which invoke the
+     * function record when they did, and 'teardown' waits until it is allowed.
      * 
      * @param args to control setting up, invoking, and, cleaning up function
      *             resources.
@@ -123,7 +156,7 @@ public class InvokeFunctionExample {
      */
     public static void main(String[] args) throws Exception {
 
-        // Handle commands: {setup. invoke, teardown}
+        // Handle commands: {setup. reconcile, rollout, invoke, tune, loadtest, daemon, tail, scatter, fanout, teardown}
         final Set<String> commands = new TreeSet<String>(Arrays.asList(args));
 
         // All resources will be prefixed with this name.
@@ -155,21 +188,273 @@ public class InvokeFunctionExample {
         final AuthenticationDetailsProvider provider = 
             new ConfigFileAuthenticationDetailsProvider(configurationFilePath, profile);
 
-        try {
+        // Circuit breaking is opt-in, so raw failures are seen unless it is asked for.
+        if (Boolean.parseBoolean(envOrDefault("CIRCUIT_BREAKER", "false"))) {
+            CircuitBreaker.setDefaultSettings(new CircuitBreaker.Settings(
+                Double.parseDouble(envOrDefault("CIRCUIT_BREAKER_FAILURE_RATE", "0.5")),
+                Long.parseLong(envOrDefault("CIRCUIT_BREAKER_SLOW_CALL_MS", "10000")),
+                Long.parseLong(envOrDefault("CIRCUIT_BREAKER_OPEN_MS", "30000"))));
+        } else {
+            CircuitBreaker.setDefaultSettings(null);
+        }
+
+        // Response caching is opt-in, for functions (ids or names, or '*') whose response depends only on the payload.
+        if (Boolean.parseBoolean(envOrDefault("RESPONSE_CACHE", "false"))) {
+            final String cacheFunctions = envOrDefault("RESPONSE_CACHE_FUNCTIONS", "");
+            if (cacheFunctions.trim().isEmpty()) {
+                throw new Exception(
+                    "Please set RESPONSE_CACHE_FUNCTIONS to the function ids or names (or '*') whose responses may be cached");
+            }
+            ResponseCache.setFunctions(Arrays.asList(cacheFunctions.trim().split("\\s*,\\s*")));
+            final String mappedFile = System.getenv("RESPONSE_CACHE_MAPPED_FILE");
+            ResponseCache.setShared(new ResponseCache(
+                Integer.parseInt(envOrDefault("RESPONSE_CACHE_MAX_ENTRIES", "10000")),
+                Long.parseLong(envOrDefault("RESPONSE_CACHE_TTL_MS", "60000")),
+                ResponseCache.Eviction.valueOf(envOrDefault("RESPONSE_CACHE_EVICTION", "lru").toUpperCase()),
+                (mappedFile != null) ? Paths.get(mappedFile) : null,
+                Integer.parseInt(envOrDefault("RESPONSE_CACHE_MAPPED_MB", "64")) * 1024 * 1024,
+                Integer.parseInt(envOrDefault("RESPONSE_CACHE_LARGE_VALUE_BYTES", "16384"))));
+        }
+
+        // An adaptive in-flight limit per function can replace hand-tuned worker counts.
+        if (Boolean.parseBoolean(envOrDefault("ADAPTIVE_LIMIT", "false"))) {
+            AdaptiveLimiter.setDefaultSettings(new AdaptiveLimiter.Settings(
+                Integer.parseInt(envOrDefault("ADAPTIVE_LIMIT_INITIAL", "20")),
+                Integer.parseInt(envOrDefault("ADAPTIVE_LIMIT_MIN", "1")),
+                Integer.parseInt(envOrDefault("ADAPTIVE_LIMIT_MAX", "1000"))));
+        }
+
+        // Identical in-flight invocations of these functions (ids or names, or '*') share one request.
+        final String coalesceFunctions = envOrDefault("COALESCE_FUNCTIONS", "");
+        if (!coalesceFunctions.trim().isEmpty()) {
+            InflightCoalescer.setFunctions(Arrays.asList(coalesceFunctions.trim().split("\\s*,\\s*")));
+        }
+
+        // Connections to function endpoints can be kept warm, so no invocation waits for a handshake.
+        final int prewarmConnections = Integer.parseInt(envOrDefault("PREWARM_CONNECTIONS", "0"));
+        if (prewarmConnections > 0) {
+            // The JDK keeps at most 'http.maxConnections' idle connections per host, read when it first pools one.
+            if (prewarmConnections > Integer.getInteger("http.maxConnections", 5)) {
+                System.setProperty("http.maxConnections", Integer.toString(prewarmConnections));
+            }
+            ConnectionWarmer.setSettings(new ConnectionWarmer.Settings(
+                prewarmConnections,
+                Long.parseLong(envOrDefault("PREWARM_INTERVAL_MS", "4000")),
+                Long.parseLong(envOrDefault("PREWARM_DNS_REFRESH_MS", "15000"))));
+        }
+
+        // Spans of each OCI request, waiter and invocation can be exported as OTLP/JSON.
+        final String traceFile = System.getenv("TRACE_FILE");
+        if (traceFile != null) {
+            Tracer.setFile(Paths.get(traceFile));
+        }
+
+        // Teardowns are deferred until 30 minutes after the last invocation of the stack.
+        final TeardownQueue teardownQueue =
+            new TeardownQueue(Paths.get(envOrDefault("TEARDOWN_QUEUE_FILE", "teardown.queue")));
+        final boolean invokes = commands.contains(INVOKE) || commands.contains(TUNE) || commands.contains(LOADTEST)
+            || commands.contains(DAEMON) || commands.contains(TAIL) || commands.contains(ROLLOUT)
+            || commands.contains(SCATTER) || commands.contains(FANOUT);
+
+        // Service clients are created on first use, and shared by all the commands.
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            // Load tests, tails and scatters can invoke over a non-blocking HTTP/2 client instead of Jersey.
+            clients.setInvokeTransport(
+                Invoker.Transport.valueOf(envOrDefault("FN_TRANSPORT", "jersey").toUpperCase()));
+            clients.setHttp2IoThreads(Integer.parseInt(
+                envOrDefault("FN_HTTP2_IO_THREADS", Integer.toString(Runtime.getRuntime().availableProcessors()))));
+            clients.setHttp2ResponseTimeoutMillis(Integer.parseInt(envOrDefault(
+                "FN_HTTP2_RESPONSE_TIMEOUT_MS", Integer.toString(Http2InvokeTransport.DEFAULT_RESPONSE_TIMEOUT_MILLIS))));
+
+            if (Boolean.parseBoolean(envOrDefault("STARTUP_BENCHMARK", "false"))) {
+                // Create the clients the commands would use, without calling OCI.
+                prepareClients(clients, commands);
+                return;
+            }
+
+            // Invoking commands keep recording invocations while they run, so a
+            // teardown queued by another process is pushed back until they stop.
+            final TeardownQueue.Heartbeat heartbeat =
+                invokes ? teardownQueue.startHeartbeat(compartmentId, name) : null;
+
             if (commands.contains(SETUP)) {
-                setupResources(provider, region, compartmentId, name, image);
+                Tracer.trace(SETUP, span -> {
+                    setupResources(clients, compartmentId, name, image);
+                    return null;
+                });
+            }
+
+            if (commands.contains(RECONCILE)) {
+                // Limits which are not set are left as they are, e.g. as applied by 'tune'.
+                final Long memoryInMBs = (System.getenv("FN_MEMORY_MB") != null)
+                    ? Long.valueOf(System.getenv("FN_MEMORY_MB"))
+                    : null;
+                final Integer timeoutInSeconds = (System.getenv("FN_TIMEOUT_S") != null)
+                    ? Integer.valueOf(System.getenv("FN_TIMEOUT_S"))
+                    : null;
+                Tracer.trace(RECONCILE, span -> {
+                    reconcileResources(clients, compartmentId, name, image, memoryInMBs, timeoutInSeconds);
+                    return null;
+                });
+            }
+
+            if (commands.contains(ROLLOUT)) {
+                if (image == null) {
+                    throw new Exception("Please set OCIR_FN_IMAGE to the image to roll out");
+                }
+                final int batchSize = Integer.parseInt(envOrDefault("ROLLOUT_BATCH_SIZE", "5"));
+                Tracer.trace(ROLLOUT, span -> {
+                    FunctionRollout.rollout(clients, compartmentId, name, image, batchSize, payload);
+                    return null;
+                });
             }
 
             if (commands.contains(INVOKE)) {
-                invokeFunction(provider, region, compartmentId, name, payload);
+                Tracer.trace(INVOKE, span -> {
+                    invokeFunction(clients, compartmentId, name, payload, System.getenv("FN_RESPONSE_FILE"));
+                    return null;
+                });
+            }
+
+            if (commands.contains(TUNE)) {
+                // A representative set of payloads, one per non-blank line, can be specified for tuning.
+                final List<String> payloads = new ArrayList<>();
+                if (System.getenv("FN_PAYLOADS_FILE") != null) {
+                    for (final String line : Files.readAllLines(
+                            Paths.get(System.getenv("FN_PAYLOADS_FILE")), StandardCharsets.UTF_8)) {
+                        if (!line.trim().isEmpty()) {
+                            payloads.add(line);
+                        }
+                    }
+                    if (payloads.isEmpty()) {
+                        throw new Exception(
+                            "Please set FN_PAYLOADS_FILE to a file with at least one payload; "
+                            + System.getenv("FN_PAYLOADS_FILE") + " has none");
+                    }
+                } else {
+                    payloads.add(payload);
+                }
+                final int invocationsPerTier = Integer.parseInt(envOrDefault("TUNE_INVOCATIONS", "10"));
+                final long targetP95Millis = Long.parseLong(envOrDefault("TUNE_TARGET_P95_MS", "1000"));
+                final boolean apply = Boolean.parseBoolean(envOrDefault("TUNE_APPLY", "false"));
+                FunctionTuner.tuneFunction(
+                    clients, compartmentId, name, payloads, invocationsPerTier, targetP95Millis, apply);
+            }
+
+            if (commands.contains(LOADTEST)) {
+                final double ratePerSecond = Double.parseDouble(envOrDefault("LOADTEST_RPS", "10"));
+                final long durationSeconds = Long.parseLong(envOrDefault("LOADTEST_DURATION_S", "60"));
+                final LoadGenerator.Arrival arrival =
+                    LoadGenerator.Arrival.valueOf(envOrDefault("LOADTEST_ARRIVAL", "constant").toUpperCase());
+                final int maxInFlight = Integer.parseInt(envOrDefault("LOADTEST_MAX_IN_FLIGHT", "256"));
+                final String csvPath = envOrDefault("LOADTEST_CSV", "loadtest.csv");
+                // A non-negative delay targets a local stub server instead of the real function.
+                final long stubDelayMillis = Long.parseLong(envOrDefault("LOADTEST_STUB_DELAY_MS", "-1"));
+                LoadGenerator.loadTest(
+                    clients, compartmentId, name, payload,
+                    ratePerSecond, durationSeconds, arrival, maxInFlight, csvPath, stubDelayMillis);
+            }
+
+            if (commands.contains(DAEMON)) {
+                final int port = Integer.parseInt(envOrDefault("DAEMON_PORT", "8089"));
+                final int threads = Integer.parseInt(envOrDefault("DAEMON_THREADS", "16"));
+                final long deadlineMillis = Long.parseLong(envOrDefault("DAEMON_DEADLINE_MS", "60000"));
+                FunctionDaemon.serve(clients, compartmentId, name, port, threads, deadlineMillis);
+            }
+
+            if (commands.contains(TAIL)) {
+                final String source = System.getenv("TAIL_SOURCE");
+                if (source == null) {
+                    throw new Exception("Please set TAIL_SOURCE to an NDJSON file or spool directory to tail");
+                }
+                final String outputFile = envOrDefault("TAIL_OUTPUT", "tail-output.ndjson");
+                final String checkpointFile = envOrDefault("TAIL_CHECKPOINT", "tail.checkpoint");
+                final int parallelism = Integer.parseInt(envOrDefault("TAIL_PARALLELISM", "8"));
+                final boolean follow = Boolean.parseBoolean(envOrDefault("TAIL_FOLLOW", "true"));
+                FunctionTailer.tail(
+                    clients, compartmentId, name, source, outputFile, checkpointFile, parallelism, follow);
+            }
+
+            if (commands.contains(SCATTER)) {
+                final String inputFile = System.getenv("SCATTER_INPUT");
+                if (inputFile == null) {
+                    throw new Exception("Please set SCATTER_INPUT to the file to split across invocations");
+                }
+                final String outputFile = envOrDefault("SCATTER_OUTPUT", "scatter-output.txt");
+                final String reducer = envOrDefault("SCATTER_REDUCER", ScatterGather.CONCAT);
+                final int chunkBytes = Integer.parseInt(envOrDefault("SCATTER_CHUNK_BYTES", "1048576"));
+                final int parallelism = Integer.parseInt(envOrDefault("SCATTER_PARALLELISM", "8"));
+                final int retries = Integer.parseInt(envOrDefault("SCATTER_RETRIES", "3"));
+                Tracer.trace(SCATTER, span -> {
+                    ScatterGather.scatter(
+                        clients, compartmentId, name, inputFile, outputFile, reducer, chunkBytes, parallelism, retries);
+                    return null;
+                });
+            }
+
+            if (commands.contains(FANOUT)) {
+                final String inputFile = System.getenv("FANOUT_INPUT");
+                if (inputFile == null) {
+                    throw new Exception("Please set FANOUT_INPUT to the NDJSON file of keyed events to invoke");
+                }
+                final String outputFile = envOrDefault("FANOUT_OUTPUT", "fanout-output.ndjson");
+                final String keyField = envOrDefault("FANOUT_KEY_FIELD", "key");
+                final int lanes = Integer.parseInt(envOrDefault("FANOUT_LANES", "8"));
+                Tracer.trace(FANOUT, span -> {
+                    KeyedInvoker.fanOut(clients, compartmentId, name, inputFile, outputFile, keyField, lanes);
+                    return null;
+                });
+            }
+
+            if (heartbeat != null) {
+                heartbeat.close();
             }
 
             if (commands.contains(TEARDOWN)) {
-                teardownResources(provider, region, compartmentId, name);
+                final boolean wait = Boolean.parseBoolean(envOrDefault("TEARDOWN_WAIT", "true"));
+                Tracer.trace(TEARDOWN, span -> {
+                    final long due = teardownQueue.schedule(compartmentId, name);
+                    if (due > System.currentTimeMillis()) {
+                        System.out.println("Teardown deferred until 30 minutes after the last invocation");
+                    }
+                    teardownQueue.run(clients, wait);
+                    return null;
+                });
             }
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("Error: " + e);
+        } finally {
+            Tracer.flush();
+        }
+    }
+
+    /**
+     * Creates the service clients each command uses, so the startup cost of a
+     * command can be measured without creating or invoking anything.
+     *
+     * @param clients  the service clients.
+     * @param commands the commands to prepare for.
+     */
+    static void prepareClients(final ServiceClients clients, final Set<String> commands) {
+        if (commands.contains(SETUP) || commands.contains(RECONCILE)) {
+            clients.identity();
+        }
+        if (commands.contains(SETUP) || commands.contains(RECONCILE) || commands.contains(TEARDOWN)) {
+            clients.virtualNetwork();
+        }
+        if (!commands.isEmpty()) {
+            clients.functionsManagement();
+        }
+        if (commands.contains(INVOKE) || commands.contains(TUNE) || commands.contains(LOADTEST)
+            || commands.contains(DAEMON) || commands.contains(TAIL) || commands.contains(ROLLOUT)
+            || commands.contains(SCATTER) || commands.contains(FANOUT)) {
+            // No request is sent; any endpoint will do.
+            clients.functionsInvoke(STARTUP_BENCHMARK_ENDPOINT);
+        }
+        if ((commands.contains(LOADTEST) || commands.contains(TAIL) || commands.contains(SCATTER))
+            && clients.getInvokeTransport() == Invoker.Transport.HTTP2) {
+            clients.http2Invoke();
         }
     }
 
@@ -193,67 +478,229 @@ public class InvokeFunctionExample {
         final String image
         ) throws Exception {
 
-        final Identity identityClient = new IdentityClient(provider);
-        identityClient.setRegion(region);
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            setupResources(clients, compartmentId, name, image);
+        }
+    }
 
-        final VirtualNetworkClient vcnClient = new VirtualNetworkClient(provider);
-        vcnClient.setRegion(region);
+    /**
+     * Create all the OCI and Fn resources required to invoke a function.
+     *
+     * @param clients       the service clients to use, in the region in which
+     *                      to create the required resources.
+     * @param compartmentId the compartment in which to created the required
+     *                      resources.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @param image         a valid OCIR image for the function.
+     * @throws Exception
+     */
+    public static void setupResources(
+        final ServiceClients clients,
+        final String compartmentId, 
+        final String name, 
+        final String image
+        ) throws Exception {
 
-        final FunctionsManagementClient fnManagementClient 
-            = new FunctionsManagementClient(provider);
-        fnManagementClient.setRegion(region);
+        final Identity identityClient = clients.identity();
+        final VirtualNetworkClient vcnClient = clients.virtualNetwork();
+        final FunctionsManagementClient fnManagementClient = clients.functionsManagement();
+
+        // 1. A list of AvailabiityDomains are required to determine where to host each
+        // subnet.
+        final List<AvailabilityDomain> availabilityDomains = 
+            getAvailabilityDomains(identityClient, compartmentId);
+        final AvailabilityDomain ad = availabilityDomains.get(0);
+        System.out.printf("Using availability domain: " + ad.getName() + "\n");
+
+        // 2. A VCN is required to host subnets.
+        final String vcnDisplayName = vcnName(name);
+        final String vcnCidrBlock = "10.0.0.0/16";
+        final Vcn vcn = createVcn(vcnClient, compartmentId, vcnDisplayName, vcnCidrBlock);
+        System.out.println("Created VCN: " + vcn.getDisplayName());
+
+        // 3. An Internet Gateway is required to enable the VCN to talk to the wider world.
+        final String igDisplayName = igName(name);
+        final InternetGateway ig = 
+            createInternetGateway(vcnClient, compartmentId, igDisplayName, vcn.getId());
+
+        // 4. We must configure the VCN's traffics to be routed through the IG.
+        final String drtDisplayName = drtName(name);
+        configureInternetGateway(vcnClient, compartmentId,  vcn.getId(), ig.getId(), drtDisplayName);
+
+        // 5. A subnet is required to expose and be able invoke the function.
+        // In multiple AD regions, subnets can be created in multiple ADs to provide
+        // redundency.
+        final String subnetDisplayName = subnetName(name);
+        final String subnetCidrBlock = "10.0.0.0/24";
+        final Subnet subnet = 
+            createSubnet(vcnClient, compartmentId, vcn.getId(), subnetDisplayName, ad.getName(), subnetCidrBlock);
+        System.out.println("Created VCN subnet: " + subnet.getDisplayName());
+
+        // 6. Create an Application to host and manage the function(s).
+        final String appDisplayName = applicationName(name);
+        final List<String> subnetIds = new ArrayList<>();
+        subnetIds.add(subnet.getId());
+        final Application app = createApplication(fnManagementClient, compartmentId, appDisplayName, subnetIds);
+        System.out.println("Created Application: " + app.getDisplayName());
+
+        // 7. Create a single Function, set its execution image and limits.
+        final String fnDisplayName = functionName(name);
+        final long memoryInMBs = DEFAULT_MEMORY_IN_MBS;
+        final int timeoutInSeconds = DEFAULT_TIMEOUT_IN_SECONDS;
+        final Function fn = 
+            createFunction(fnManagementClient, app.getId(), fnDisplayName, image, memoryInMBs, timeoutInSeconds);
+        System.out.println("Created Function: " + fn.getDisplayName());
+    }
 
-        try {
-            // 1. A list of AvailabiityDomains are required to determine where to host each
-            // subnet.
-            final List<AvailabilityDomain> availabilityDomains = 
-                getAvailabilityDomains(identityClient, compartmentId);
-            final AvailabilityDomain ad = availabilityDomains.get(0);
-            System.out.printf("Using availability domain: " + ad.getName() + "\n");
+    /**
+     * Reconcile the OCI and Fn resources required to invoke a function with
+     * those that already exist.
+     *
+     * Each resource is looked up by name and only created if it is missing,
+     * waiting only for resources which are not yet available. The function's
+     * image, memory and timeout are updated only if they are requested and
+     * differ, so re-running with a new image is a single update and limits
+     * which are not requested are left as they are.
+     *
+     * @param clients          the service clients to use, in the region in
+     *                         which to reconcile the resources.
+     * @param compartmentId    the compartment in which to reconcile the
+     *                         resources.
+     * @param name             a name prefix to easilly identifty the resources.
+     * @param image            a valid OCIR image for the function, or null
+     *                         to keep the existing function's image.
+     * @param memoryInMBs      the memory limit of the function, or null to
+     *                         keep the existing limit (128MB on creation).
+     * @param timeoutInSeconds the timeout of the function, or null to keep
+     *                         the existing timeout (30s on creation).
+     * @throws Exception if a resource is not unique by name, or the function
+     *                   must be created and no image is given.
+     */
+    public static void reconcileResources(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String image,
+        final Long memoryInMBs,
+        final Integer timeoutInSeconds
+        ) throws Exception {
 
-            // 2. A VCN is required to host subnets.
-            final String vcnDisplayName = vcnName(name);
-            final String vcnCidrBlock = "10.0.0.0/16";
-            final Vcn vcn = createVcn(vcnClient, compartmentId, vcnDisplayName, vcnCidrBlock);
+        final VirtualNetworkClient vcnClient = clients.virtualNetwork();
+        final FunctionsManagementClient fnManagementClient = clients.functionsManagement();
+
+        // 0. Without an image the function can only be reconciled if it already exists.
+        if (image == null) {
+            final ApplicationSummary app = findApplicationByName(fnManagementClient, compartmentId, applicationName(name));
+            if (app == null || findFunctionByName(fnManagementClient, app.getId(), functionName(name)) == null) {
+                throw new Exception("Please set OCIR_FN_IMAGE; the Function does not exist and must be created");
+            }
+        }
+
+        // 1. A VCN is required to host subnets.
+        final String vcnDisplayName = vcnName(name);
+        Vcn vcn = findVcnByName(vcnClient, compartmentId, vcnDisplayName);
+        if (vcn == null) {
+            vcn = createVcn(vcnClient, compartmentId, vcnDisplayName, "10.0.0.0/16");
             System.out.println("Created VCN: " + vcn.getDisplayName());
+        } else if (vcn.getLifecycleState() != Vcn.LifecycleState.Available) {
+            vcn = waitForVcn(vcnClient, vcn.getId(), Vcn.LifecycleState.Available);
+            System.out.println("Found VCN: " + vcn.getDisplayName());
+        } else {
+            System.out.println("Found VCN: " + vcn.getDisplayName());
+        }
 
-            // 3. An Internet Gateway is required to enable the VCN to talk to the wider world.
-            final String igDisplayName = igName(name);
-            final InternetGateway ig = 
-                createInternetGateway(vcnClient, compartmentId, igDisplayName, vcn.getId());
-
-            // 4. We must configure the VCN's traffics to be routed through the IG.
-            final String drtDisplayName = drtName(name);
-            configureInternetGateway(vcnClient, compartmentId,  vcn.getId(), ig.getId(), drtDisplayName);
-
-            // 5. A subnet is required to expose and be able invoke the function.
-            // In multiple AD regions, subnets can be created in multiple ADs to provide
-            // redundency.
-            final String subnetDisplayName = subnetName(name);
-            final String subnetCidrBlock = "10.0.0.0/24";
-            final Subnet subnet = 
-                createSubnet(vcnClient, compartmentId, vcn.getId(), subnetDisplayName, ad.getName(), subnetCidrBlock);
+        // 2. An Internet Gateway is required to enable the VCN to talk to the wider world.
+        final String igDisplayName = igName(name);
+        InternetGateway ig = findInternetGatewayByName(vcnClient, compartmentId, vcn.getId(), igDisplayName);
+        if (ig == null) {
+            ig = createInternetGateway(vcnClient, compartmentId, igDisplayName, vcn.getId());
+            System.out.println("Created internet gateway: " + ig.getDisplayName());
+        } else if (ig.getLifecycleState() != InternetGateway.LifecycleState.Available) {
+            waitForInternetGateway(vcnClient, ig.getId(), InternetGateway.LifecycleState.Available);
+            System.out.println("Found internet gateway: " + ig.getDisplayName());
+        } else {
+            System.out.println("Found internet gateway: " + ig.getDisplayName());
+        }
+
+        // 3. The VCN's traffic must be routed through the IG; the default route table always exists.
+        final String drtDisplayName = drtName(name);
+        final RouteTable rt = getUniqueRouteTableByName(vcnClient, compartmentId, vcn.getId(), drtDisplayName);
+        if (!routesTo(rt, ig.getId())) {
+            configureInternetGateway(vcnClient, compartmentId, vcn.getId(), ig.getId(), drtDisplayName);
+            System.out.println("Configured route table: " + rt.getDisplayName());
+        }
+
+        // 4. A subnet is required to expose and be able invoke the function.
+        final String subnetDisplayName = subnetName(name);
+        Subnet subnet = findSubnetByName(vcnClient, compartmentId, vcn.getId(), subnetDisplayName);
+        if (subnet == null) {
+            final List<AvailabilityDomain> availabilityDomains =
+                getAvailabilityDomains(clients.identity(), compartmentId);
+            final AvailabilityDomain ad = availabilityDomains.get(0);
+            System.out.printf("Using availability domain: " + ad.getName() + "\n");
+            subnet = createSubnet(vcnClient, compartmentId, vcn.getId(), subnetDisplayName, ad.getName(), "10.0.0.0/24");
             System.out.println("Created VCN subnet: " + subnet.getDisplayName());
+        } else if (subnet.getLifecycleState() != Subnet.LifecycleState.Available) {
+            waitForSubnet(vcnClient, subnet.getId(), Subnet.LifecycleState.Available);
+            System.out.println("Found VCN subnet: " + subnet.getDisplayName());
+        } else {
+            System.out.println("Found VCN subnet: " + subnet.getDisplayName());
+        }
 
-            // 6. Create an Application to host and manage the function(s).
-            final String appDisplayName = applicationName(name);
+        // 5. An Application to host and manage the function(s).
+        final String appDisplayName = applicationName(name);
+        final ApplicationSummary existingApp = findApplicationByName(fnManagementClient, compartmentId, appDisplayName);
+        final String appId;
+        if (existingApp == null) {
             final List<String> subnetIds = new ArrayList<>();
             subnetIds.add(subnet.getId());
             final Application app = createApplication(fnManagementClient, compartmentId, appDisplayName, subnetIds);
+            appId = app.getId();
             System.out.println("Created Application: " + app.getDisplayName());
+        } else {
+            if (existingApp.getLifecycleState() != Application.LifecycleState.Active) {
+                waitForApplication(fnManagementClient, existingApp.getId(), Application.LifecycleState.Active);
+            }
+            appId = existingApp.getId();
+            System.out.println("Found Application: " + existingApp.getDisplayName());
+        }
 
-            // 7. Create a single Function, set its execution image and limits.
-            final String fnDisplayName = functionName(name);
-            final long memoryInMBs = 128L;
-            final int timeoutInSeconds = 30;
-            final Function fn = 
-                createFunction(fnManagementClient, app.getId(), fnDisplayName, image, memoryInMBs, timeoutInSeconds);
+        // 6. A single Function, with the requested image and limits.
+        final String fnDisplayName = functionName(name);
+        final FunctionSummary existingFn = findFunctionByName(fnManagementClient, appId, fnDisplayName);
+        if (existingFn == null) {
+            final Function fn = createFunction(
+                fnManagementClient,
+                appId,
+                fnDisplayName,
+                image,
+                (memoryInMBs != null) ? memoryInMBs : DEFAULT_MEMORY_IN_MBS,
+                (timeoutInSeconds != null) ? timeoutInSeconds : DEFAULT_TIMEOUT_IN_SECONDS);
             System.out.println("Created Function: " + fn.getDisplayName());
+            return;
+        }
 
-        } finally {
-            fnManagementClient.close();
-            vcnClient.close();
-            identityClient.close();
+        if (existingFn.getLifecycleState() != Function.LifecycleState.Active) {
+            waitForFunction(fnManagementClient, existingFn.getId(), Function.LifecycleState.Active);
+        }
+
+        final boolean imageDiffers = image != null && !image.equals(existingFn.getImage());
+        final boolean memoryDiffers = memoryInMBs != null && !memoryInMBs.equals(existingFn.getMemoryInMBs());
+        final boolean timeoutDiffers =
+            timeoutInSeconds != null && !timeoutInSeconds.equals(existingFn.getTimeoutInSeconds());
+        if (imageDiffers || memoryDiffers || timeoutDiffers) {
+            updateFunction(
+                fnManagementClient,
+                existingFn.getId(),
+                imageDiffers ? image : null,
+                memoryDiffers ? memoryInMBs : null,
+                timeoutDiffers ? timeoutInSeconds : null);
+            System.out.println("Updated Function: " + existingFn.getDisplayName()
+                + (imageDiffers ? " image=" + image : "")
+                + (memoryDiffers ? " memory=" + memoryInMBs + "MB" : "")
+                + (timeoutDiffers ? " timeout=" + timeoutInSeconds + "s" : ""));
+        } else {
+            System.out.println("Found Function: " + existingFn.getDisplayName());
         }
     }
 
@@ -277,25 +724,81 @@ public class InvokeFunctionExample {
         final String payload
         ) throws Exception {
 
-        final FunctionsManagementClient fnManagementClient = new FunctionsManagementClient(provider);
-        fnManagementClient.setRegion(region);
+        invokeFunction(provider, region, compartmentId, name, payload, null);
+    }
 
-        final FunctionsInvokeClient fnInvokeClient = new FunctionsInvokeClient(provider);
+    /**
+     * Invoke the example function, optionally appending its response to a file.
+     *
+     * @param provider      the OCI credentials provider.
+     * @param region        the OCI region in which the function exists.
+     * @param compartmentId the compartment in which the function exists.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @param payload       the payload to pass to the function.
+     * @param responseFile  a file to append the response to, or null to print
+     *                      the response.
+     * @throws Exception
+     */
+    public static void invokeFunction(
+        final AuthenticationDetailsProvider provider, 
+        final Region region,
+        final String compartmentId, 
+        final String name, 
+        final String payload,
+        final String responseFile
+        ) throws Exception {
+
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            invokeFunction(clients, compartmentId, name, payload, responseFile);
+        }
+    }
+
+    /**
+     * Invoke the example function, optionally appending its response to a file.
+     *
+     * @param clients       the service clients to use, in the region in which
+     *                      the function exists.
+     * @param compartmentId the compartment in which the function exists.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @param payload       the payload to pass to the function.
+     * @param responseFile  a file to append the response to, or null to print
+     *                      the response.
+     * @throws Exception
+     */
+    public static void invokeFunction(
+        final ServiceClients clients,
+        final String compartmentId, 
+        final String name, 
+        final String payload,
+        final String responseFile
+        ) throws Exception {
 
         try {
             // Invoke the function!
             final String appName = applicationName(name);
             final String fnName = functionName(name);
             final FunctionSummary fn = 
-                getUniqueFunctionByName(fnManagementClient, compartmentId, appName, fnName);
+                getUniqueFunctionByName(clients.functionsManagement(), compartmentId, appName, fnName);
 
-            final String response = invokeFunction(fnInvokeClient, fn, payload);
-            if (response != null) {
-                System.out.println("Response from function:  " + response);
+            final FunctionsInvokeClient fnInvokeClient = clients.functionsInvoke(fn.getInvokeEndpoint());
+            System.err.println("Invoking function endpoint - " + fn.getInvokeEndpoint());
+            if (responseFile != null) {
+                try (final FileChannel file = FileChannel.open(
+                        Paths.get(responseFile),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    file.position(file.size());
+                    final long written = invokeFunction(fnInvokeClient, fn, payload, ResponseSinks.toFile(file));
+                    System.out.println("Wrote " + written + " bytes of response to: " + responseFile);
+                }
+            } else {
+                final String response = invokeFunction(fnInvokeClient, fn, payload);
+                if (response != null) {
+                    System.out.println("Response from function:  " + response);
+                }
             }
-        } finally {
-            fnInvokeClient.close();
-            fnManagementClient.close();
+        } catch (final Exception e) {
+            System.err.println("Failed to invoke function: " + e);
+            throw e;
         }
     }
 
@@ -321,77 +824,94 @@ public class InvokeFunctionExample {
         final String name
         ) throws Exception {
 
-        final Identity identityClient = new IdentityClient(provider);
-        identityClient.setRegion(region);
-
-        final VirtualNetworkClient vcnClient = new VirtualNetworkClient(provider);
-        vcnClient.setRegion(region);
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            teardownResources(clients, compartmentId, name);
+        }
+    }
 
-        final FunctionsManagementClient fnManagementClient = new FunctionsManagementClient(provider);
-        fnManagementClient.setRegion(region);
+    /**
+     * Destroy all the OCI and Fn resources created by 'setupResources'.
+     * 
+     * NB: Resources can only be removed 30 minutes after the last Function
+     * invocation.
+     *
+     * @param clients       the service clients to use, in the region in which
+     *                      the resources exist.
+     * @param compartmentId the compartment in which the resources exist.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @throws Exception
+     */
+    public static void teardownResources(
+        final ServiceClients clients,
+        final String compartmentId, 
+        final String name
+        ) throws Exception {
 
-        try {
-            System.out.println("Cleaning up");
+        final VirtualNetworkClient vcnClient = clients.virtualNetwork();
+        final FunctionsManagementClient fnManagementClient = clients.functionsManagement();
 
-            final String vcnName = vcnName(name);
-            final String igName = igName(name);
-            final String drtName = drtName(name);
-            final String subnetName = subnetName(name);
-            final String appName = applicationName(name);
-            final String fnName = functionName(name);
+        System.out.println("Cleaning up");
 
-            final Vcn vcn = 
-                getUniqueVcnByName(vcnClient, compartmentId, vcnName);
+        final String vcnName = vcnName(name);
+        final String igName = igName(name);
+        final String drtName = drtName(name);
+        final String subnetName = subnetName(name);
+        final String appName = applicationName(name);
+        final String fnName = functionName(name);
 
-            final InternetGateway ig = 
-                getUniqueInternetGatewayByName(vcnClient, compartmentId, vcn.getId(), igName);
-            
-            final RouteTable rt = 
-                getUniqueRouteTableByName(vcnClient, compartmentId, vcn.getId(), drtName);
+        // A deferred teardown may be retried after some resources have gone, so each
+        // resource which is no longer found is skipped.
+        final Vcn vcn = 
+            findVcnByName(vcnClient, compartmentId, vcnName);
 
-            final Subnet subnet = 
-                getUniqueSubnetByName(vcnClient, compartmentId, vcn.getId(), subnetName);
+        final InternetGateway ig = (vcn != null)
+            ? findInternetGatewayByName(vcnClient, compartmentId, vcn.getId(), igName)
+            : null;
+        
+        // Every VCN has a default route table.
+        final RouteTable rt = (vcn != null)
+            ? getUniqueRouteTableByName(vcnClient, compartmentId, vcn.getId(), drtName)
+            : null;
 
-            final ApplicationSummary application = 
-                getUniqueApplicationByName(fnManagementClient, compartmentId, appName);
+        final Subnet subnet = (vcn != null)
+            ? findSubnetByName(vcnClient, compartmentId, vcn.getId(), subnetName)
+            : null;
 
-            final FunctionSummary fn = 
-                getUniqueFunctionByName(fnManagementClient, application.getId(), fnName);
+        final ApplicationSummary application = 
+            findApplicationByName(fnManagementClient, compartmentId, appName);
 
-            if (fn != null) {
-                deleteFunction(fnManagementClient, fn.getId());
-                System.out.println("Deleted function: " + fn.getDisplayName());
-            }
+        final FunctionSummary fn = (application != null)
+            ? findFunctionByName(fnManagementClient, application.getId(), fnName)
+            : null;
 
-            if (application != null) {
-                deleteApplication(fnManagementClient, application.getId());
-                System.out.println("Deleted application: " + application.getDisplayName());
-            }
+        if (fn != null) {
+            deleteFunction(fnManagementClient, fn.getId());
+            System.out.println("Deleted function: " + fn.getDisplayName());
+        }
 
-            if (subnet != null) {
-                deleteSubnet(vcnClient, subnet.getId());
-                System.out.println("Deleted subnet: " + subnet.getDisplayName());
-            }
+        if (application != null) {
+            deleteApplication(fnManagementClient, application.getId());
+            System.out.println("Deleted application: " + application.getDisplayName());
+        }
 
-            if (rt != null) {
-                prepareDefaultRouteTableForDelete(vcnClient, rt.getId());
-                System.out.println("Cleaned route table: " + subnet.getDisplayName());
-            }
+        if (subnet != null) {
+            deleteSubnet(vcnClient, subnet.getId());
+            System.out.println("Deleted subnet: " + subnet.getDisplayName());
+        }
 
-            if (ig != null) {
-                deleteInternetGateway(vcnClient, ig.getId());
-                System.out.println("Deleted internet gateway: " + subnet.getDisplayName());
-            }
+        if (rt != null) {
+            prepareDefaultRouteTableForDelete(vcnClient, rt.getId());
+            System.out.println("Cleaned route table: " + rt.getDisplayName());
+        }
 
-            if (vcn != null) {
-                deleteVcn(vcnClient, vcn);
-                System.out.println("Deleted VCN: " + vcn.getDisplayName());
-            }
+        if (ig != null) {
+            deleteInternetGateway(vcnClient, ig.getId());
+            System.out.println("Deleted internet gateway: " + ig.getDisplayName());
+        }
 
-        } finally {
-            fnManagementClient.close();
-            vcnClient.close();
-            identityClient.close();
+        if (vcn != null) {
+            deleteVcn(vcnClient, vcn);
+            System.out.println("Deleted VCN: " + vcn.getDisplayName());
         }
     }
 
@@ -411,11 +931,16 @@ public class InvokeFunctionExample {
         final String compartmentId
         ) throws Exception {
 
-        final ListAvailabilityDomainsResponse listAvailabilityDomainsResponse = 
-            identityClient.listAvailabilityDomains(
-                ListAvailabilityDomainsRequest.builder()
-                    .compartmentId(compartmentId)
-                    .build());
+        final ListAvailabilityDomainsResponse listAvailabilityDomainsResponse =
+            Tracer.request("ListAvailabilityDomains", span -> {
+                final ListAvailabilityDomainsResponse response =
+                    identityClient.listAvailabilityDomains(
+                        ListAvailabilityDomainsRequest.builder()
+                            .compartmentId(compartmentId)
+                            .build());
+                span.setRequestId(response.getOpcRequestId());
+                return response;
+            });
 
         return listAvailabilityDomainsResponse.getItems();
     }
@@ -441,27 +966,22 @@ public class InvokeFunctionExample {
         final String cidrBlock
         ) throws Exception {
 
-        final CreateVcnResponse createVcnResponse = 
-            vcnClient.createVcn(
-                CreateVcnRequest.builder()
-                    .createVcnDetails(
-                        CreateVcnDetails.builder()
-                            .compartmentId(compartmentId)
-                            .displayName(displayName)
-                            .cidrBlock(cidrBlock)
-                            .build())
-                        .build());
-
-        final GetVcnResponse getVcnResponse = 
-            vcnClient.getWaiters()
-                .forVcn(
-                    GetVcnRequest.builder()
-                        .vcnId(createVcnResponse.getVcn().getId())
-                        .build(),
-                    Vcn.LifecycleState.Available)
-                .execute();
-
-        return getVcnResponse.getVcn();
+        final CreateVcnResponse createVcnResponse = Tracer.request("CreateVcn", span -> {
+            final CreateVcnResponse response =
+                vcnClient.createVcn(
+                    CreateVcnRequest.builder()
+                        .createVcnDetails(
+                            CreateVcnDetails.builder()
+                                .compartmentId(compartmentId)
+                                .displayName(displayName)
+                                .cidrBlock(cidrBlock)
+                                .build())
+                            .build());
+            span.setOcid(response.getVcn().getId()).setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        return waitForVcn(vcnClient, createVcnResponse.getVcn().getId(), Vcn.LifecycleState.Available);
     }
 
     /**
@@ -486,7 +1006,11 @@ public class InvokeFunctionExample {
                 .displayName(vcnDisplayName)
                 .build();
 
-        final ListVcnsResponse listVcnsResponse = vcnClient.listVcns(listVcnsRequest);
+        final ListVcnsResponse listVcnsResponse = Tracer.request("ListVcns", span -> {
+            final ListVcnsResponse response = vcnClient.listVcns(listVcnsRequest);
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         if (listVcnsResponse.getItems().size() != 1) {
             throw new Exception(
@@ -497,6 +1021,49 @@ public class InvokeFunctionExample {
         return listVcnsResponse.getItems().get(0);
     }
 
+    /**
+     * Finds a uniquely named VCN in the specified compartment, ignoring VCNs
+     * which are being or have been terminated.
+     *
+     * @param vcnClient      the service client to use to query the VCN.
+     * @param compartmentId  of the VCN.
+     * @param vcnDisplayName of the VCN.
+     * @return               the VCN, or null if there is none.
+     * @throws Exception if there is more than one.
+     */
+    public static Vcn findVcnByName(
+        final VirtualNetworkClient vcnClient,
+        final String compartmentId,
+        final String vcnDisplayName
+        ) throws Exception {
+
+        final ListVcnsResponse listVcnsResponse = Tracer.request("ListVcns", span -> {
+            final ListVcnsResponse response = vcnClient.listVcns(
+                ListVcnsRequest.builder()
+                    .compartmentId(compartmentId)
+                    .displayName(vcnDisplayName)
+                    .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        final List<Vcn> vcns = new ArrayList<>();
+        for (final Vcn vcn : listVcnsResponse.getItems()) {
+            if (vcn.getLifecycleState() != Vcn.LifecycleState.Terminating
+                && vcn.getLifecycleState() != Vcn.LifecycleState.Terminated) {
+                vcns.add(vcn);
+            }
+        }
+
+        if (vcns.size() > 1) {
+            throw new Exception(
+                "Found " + vcns.size() + " VCNs with name " + vcnDisplayName +
+                " in compartment " + compartmentId);
+        }
+
+        return vcns.isEmpty() ? null : vcns.get(0);
+    }
+
     /**
      * Deletes a VCN and waits for it to be deleted.
      *
@@ -509,18 +1076,45 @@ public class InvokeFunctionExample {
         final Vcn vcn
         ) throws Exception {
 
-        vcnClient.deleteVcn(
-            DeleteVcnRequest.builder()
-                .vcnId(vcn.getId())
-                .build());
-
-        vcnClient.getWaiters()
-            .forVcn(
-                GetVcnRequest.builder()
+        Tracer.request("DeleteVcn", span -> {
+            span.setOcid(vcn.getId());
+            return span.setRequestId(vcnClient.deleteVcn(
+                DeleteVcnRequest.builder()
                     .vcnId(vcn.getId())
-                    .build(), 
-                Vcn.LifecycleState.Terminated)
-            .execute();
+                    .build()).getOpcRequestId());
+        });
+
+        waitForVcn(vcnClient, vcn.getId(), Vcn.LifecycleState.Terminated);
+    }
+
+    /**
+     * Waits for a VCN to reach a lifecycle state.
+     *
+     * @param vcnClient the service client to use to poll the VCN.
+     * @param vcnId     the VCN to wait for.
+     * @param state     the lifecycle state to wait for.
+     * @return the VCN.
+     * @throws Exception
+     */
+    static Vcn waitForVcn(
+        final VirtualNetworkClient vcnClient,
+        final String vcnId,
+        final Vcn.LifecycleState state
+        ) throws Exception {
+
+        return Tracer.trace("WaitForVcn", span -> {
+            span.setOcid(vcnId).setAttribute("oci.lifecycle_state", state.name());
+            final GetVcnResponse getVcnResponse =
+                vcnClient.getWaiters()
+                    .forVcn(
+                        GetVcnRequest.builder()
+                            .vcnId(vcnId)
+                            .build(),
+                        state)
+                    .execute();
+            span.setRequestId(getVcnResponse.getOpcRequestId());
+            return getVcnResponse.getVcn();
+        });
     }
 
     // === OCI Internet Gateway Helpers ===
@@ -532,24 +1126,26 @@ public class InvokeFunctionExample {
         final String vcnId
         ) throws Exception {
 
-        final CreateInternetGatewayResponse createInternetGatewayResponse = 
-            vcnClient.createInternetGateway(
-                CreateInternetGatewayRequest.builder()
-                    .createInternetGatewayDetails(
-                        CreateInternetGatewayDetails.builder()
-                            .compartmentId(compartmentId)
-                            .displayName(displayName)
-                            .vcnId(vcnId)
-                            .isEnabled(true)
-                            .build())
-                .build());
+        final CreateInternetGatewayResponse createInternetGatewayResponse =
+            Tracer.request("CreateInternetGateway", span -> {
+                final CreateInternetGatewayResponse response =
+                    vcnClient.createInternetGateway(
+                        CreateInternetGatewayRequest.builder()
+                            .createInternetGatewayDetails(
+                                CreateInternetGatewayDetails.builder()
+                                    .compartmentId(compartmentId)
+                                    .displayName(displayName)
+                                    .vcnId(vcnId)
+                                    .isEnabled(true)
+                                    .build())
+                        .build());
+                span.setOcid(response.getInternetGateway().getId()).setRequestId(response.getOpcRequestId());
+                return response;
+            });
 
-        vcnClient.getWaiters()
-            .forInternetGateway(
-                GetInternetGatewayRequest.builder()
-                    .igId(createInternetGatewayResponse.getInternetGateway().getId()).build(),
-                        InternetGateway.LifecycleState.Available)
-                .execute();
+        waitForInternetGateway(
+            vcnClient, createInternetGatewayResponse.getInternetGateway().getId(),
+            InternetGateway.LifecycleState.Available);
 
         return createInternetGatewayResponse.getInternetGateway();
     }
@@ -580,8 +1176,13 @@ public class InvokeFunctionExample {
                 .displayName(igDisplayName)
                 .build();
 
-        final ListInternetGatewaysResponse listInternetGatewaysResponse = 
-            vcnClient.listInternetGateways(listInternetGatewaysRequest);
+        final ListInternetGatewaysResponse listInternetGatewaysResponse =
+            Tracer.request("ListInternetGateways", span -> {
+                final ListInternetGatewaysResponse response =
+                    vcnClient.listInternetGateways(listInternetGatewaysRequest);
+                span.setRequestId(response.getOpcRequestId());
+                return response;
+            });
 
         if (listInternetGatewaysResponse.getItems().size() != 1) {
             throw new Exception(
@@ -592,6 +1193,53 @@ public class InvokeFunctionExample {
         return listInternetGatewaysResponse.getItems().get(0);
     }
 
+    /**
+     * Finds a uniquely named InternetGateway in the specified VCN, ignoring
+     * InternetGateways which are being or have been terminated.
+     *
+     * @param vcnClient     the service client to use to query the InternetGateway.
+     * @param compartmentId of the InternetGateway.
+     * @param vcnId         of the InternetGateway's associated VCN.
+     * @param igDisplayName of the InternetGateway.
+     * @return the InternetGateway, or null if there is none.
+     * @throws Exception if there is more than one.
+     */
+    public static InternetGateway findInternetGatewayByName(
+        final VirtualNetworkClient vcnClient,
+        final String compartmentId,
+        final String vcnId,
+        final String igDisplayName
+        ) throws Exception {
+
+        final ListInternetGatewaysResponse listInternetGatewaysResponse =
+            Tracer.request("ListInternetGateways", span -> {
+                final ListInternetGatewaysResponse response = vcnClient.listInternetGateways(
+                    ListInternetGatewaysRequest.builder()
+                        .compartmentId(compartmentId)
+                        .vcnId(vcnId)
+                        .displayName(igDisplayName)
+                        .build());
+                span.setRequestId(response.getOpcRequestId());
+                return response;
+            });
+
+        final List<InternetGateway> igs = new ArrayList<>();
+        for (final InternetGateway ig : listInternetGatewaysResponse.getItems()) {
+            if (ig.getLifecycleState() != InternetGateway.LifecycleState.Terminating
+                && ig.getLifecycleState() != InternetGateway.LifecycleState.Terminated) {
+                igs.add(ig);
+            }
+        }
+
+        if (igs.size() > 1) {
+            throw new Exception(
+                "Found " + igs.size() + " InternetGateways with name " + igDisplayName +
+                " in compartment " + compartmentId);
+        }
+
+        return igs.isEmpty() ? null : igs.get(0);
+    }
+
     /**
      * Deletes a InternetGateway and waits for it to be deleted.
      *
@@ -604,15 +1252,45 @@ public class InvokeFunctionExample {
         final String igId
         ) throws Exception {
 
-        vcnClient.deleteInternetGateway(
-            DeleteInternetGatewayRequest.builder()
-                .igId(igId)
-                .build());
+        Tracer.request("DeleteInternetGateway", span -> {
+            span.setOcid(igId);
+            return span.setRequestId(vcnClient.deleteInternetGateway(
+                DeleteInternetGatewayRequest.builder()
+                    .igId(igId)
+                    .build()).getOpcRequestId());
+        });
 
-        vcnClient.getWaiters().forInternetGateway(
-            GetInternetGatewayRequest.builder()
-                .igId(igId)
-                .build(), InternetGateway.LifecycleState.Terminated).execute();
+        waitForInternetGateway(vcnClient, igId, InternetGateway.LifecycleState.Terminated);
+    }
+
+    /**
+     * Waits for an InternetGateway to reach a lifecycle state.
+     *
+     * @param vcnClient the service client to use to poll the InternetGateway.
+     * @param igId      the InternetGateway to wait for.
+     * @param state     the lifecycle state to wait for.
+     * @return the InternetGateway.
+     * @throws Exception
+     */
+    static InternetGateway waitForInternetGateway(
+        final VirtualNetworkClient vcnClient,
+        final String igId,
+        final InternetGateway.LifecycleState state
+        ) throws Exception {
+
+        return Tracer.trace("WaitForInternetGateway", span -> {
+            span.setOcid(igId).setAttribute("oci.lifecycle_state", state.name());
+            final GetInternetGatewayResponse getInternetGatewayResponse =
+                vcnClient.getWaiters()
+                    .forInternetGateway(
+                        GetInternetGatewayRequest.builder()
+                            .igId(igId)
+                            .build(),
+                        state)
+                    .execute();
+            span.setRequestId(getInternetGatewayResponse.getOpcRequestId());
+            return getInternetGatewayResponse.getInternetGateway();
+        });
     }
 
     // === OCI Route Table Helpers ===
@@ -654,15 +1332,20 @@ public class InvokeFunctionExample {
                 .build()      
         );
 
-        final UpdateRouteTableResponse updateRouteTableResponse = 
-            vcnClient.updateRouteTable(
-                UpdateRouteTableRequest.builder()
-                    .rtId(defaultRouteTable.getId())
-                    .updateRouteTableDetails(
-                        UpdateRouteTableDetails.builder()
-                            .routeRules(routeRules)
-                            .build())
-                    .build());
+        final UpdateRouteTableResponse updateRouteTableResponse = Tracer.request("UpdateRouteTable", span -> {
+            span.setOcid(defaultRouteTable.getId());
+            final UpdateRouteTableResponse response =
+                vcnClient.updateRouteTable(
+                    UpdateRouteTableRequest.builder()
+                        .rtId(defaultRouteTable.getId())
+                        .updateRouteTableDetails(
+                            UpdateRouteTableDetails.builder()
+                                .routeRules(routeRules)
+                                .build())
+                        .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         return updateRouteTableResponse.getRouteTable();
     }
@@ -693,8 +1376,11 @@ public class InvokeFunctionExample {
                 .displayName(rtDisplayName)
                 .build();
 
-        final ListRouteTablesResponse listRouteTablesResponse = 
-            vcnClient.listRouteTables(listRouteTablesRequest);
+        final ListRouteTablesResponse listRouteTablesResponse = Tracer.request("ListRouteTables", span -> {
+            final ListRouteTablesResponse response = vcnClient.listRouteTables(listRouteTablesRequest);
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         if (listRouteTablesResponse.getItems().size() != 1) {
             throw new Exception(
@@ -705,6 +1391,24 @@ public class InvokeFunctionExample {
         return listRouteTablesResponse.getItems().get(0);
     }
 
+    /**
+     * Checks whether a RouteTable routes all outbound traffic to an
+     * InternetGateway.
+     *
+     * @param rt   the RouteTable.
+     * @param igId the InternetGateway.
+     * @return whether the route exists.
+     */
+    static boolean routesTo(final RouteTable rt, final String igId) {
+        for (final RouteRule rule : rt.getRouteRules()) {
+            final String destination = (rule.getDestination() != null) ? rule.getDestination() : rule.getCidrBlock();
+            if ("0.0.0.0/0".equals(destination) && igId.equals(rule.getNetworkEntityId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     /**
      * Prepares a DefaultRouteTable for deletion by deleting all RouteRules.
@@ -718,14 +1422,17 @@ public class InvokeFunctionExample {
         final String rtId
         ) throws Exception {
 
-        vcnClient.updateRouteTable(
-            UpdateRouteTableRequest.builder()
-                .rtId(rtId)
-                .updateRouteTableDetails(
-                    UpdateRouteTableDetails.builder()
-                        .routeRules(new ArrayList<RouteRule>())
-                        .build())
-                .build());
+        Tracer.request("UpdateRouteTable", span -> {
+            span.setOcid(rtId);
+            return span.setRequestId(vcnClient.updateRouteTable(
+                UpdateRouteTableRequest.builder()
+                    .rtId(rtId)
+                    .updateRouteTableDetails(
+                        UpdateRouteTableDetails.builder()
+                            .routeRules(new ArrayList<RouteRule>())
+                            .build())
+                    .build()).getOpcRequestId());
+        });
     }
 
     // === OCI Subnet Helpers ===
@@ -752,30 +1459,25 @@ public class InvokeFunctionExample {
         ) throws Exception {
 
         // Create the subnet
-        final CreateSubnetResponse createSubnetResponse =
-            vcnClient.createSubnet(
-                CreateSubnetRequest.builder()
-                    .createSubnetDetails(
-                        CreateSubnetDetails.builder()
-                            .availabilityDomain(availabilityDomainName)
-                            .compartmentId(compartmentId)
-                            .displayName(displayName)
-                            .cidrBlock(subnetCidrBlock)
-                            .vcnId(vcnId)
-                            .build())
-                    .build());
+        final CreateSubnetResponse createSubnetResponse = Tracer.request("CreateSubnet", span -> {
+            final CreateSubnetResponse response =
+                vcnClient.createSubnet(
+                    CreateSubnetRequest.builder()
+                        .createSubnetDetails(
+                            CreateSubnetDetails.builder()
+                                .availabilityDomain(availabilityDomainName)
+                                .compartmentId(compartmentId)
+                                .displayName(displayName)
+                                .cidrBlock(subnetCidrBlock)
+                                .vcnId(vcnId)
+                                .build())
+                        .build());
+            span.setOcid(response.getSubnet().getId()).setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         // Wait for the subnet to be active
-        final GetSubnetResponse getSubnetResponse =
-            vcnClient.getWaiters()
-                .forSubnet(
-                    GetSubnetRequest.builder()
-                        .subnetId(createSubnetResponse.getSubnet().getId())
-                        .build(),
-                    Subnet.LifecycleState.Available)
-                .execute();
-
-        return getSubnetResponse.getSubnet();
+        return waitForSubnet(vcnClient, createSubnetResponse.getSubnet().getId(), Subnet.LifecycleState.Available);
     }
 
     /**
@@ -803,7 +1505,11 @@ public class InvokeFunctionExample {
                 .displayName(subnetDisplayName)
                 .build();
 
-        final ListSubnetsResponse listSubnetsResponse = vcnClient.listSubnets(listSubnetsRequest);
+        final ListSubnetsResponse listSubnetsResponse = Tracer.request("ListSubnets", span -> {
+            final ListSubnetsResponse response = vcnClient.listSubnets(listSubnetsRequest);
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         if (listSubnetsResponse.getItems().size() != 1) {
             throw new Exception(
@@ -814,6 +1520,52 @@ public class InvokeFunctionExample {
         return listSubnetsResponse.getItems().get(0);
     }
 
+    /**
+     * Finds a uniquely named Subnet in the specified VCN, ignoring Subnets
+     * which are being or have been terminated.
+     *
+     * @param vcnClient the service client to use to query the Subnet.
+     * @param compartmentId of the Subnet.
+     * @param vcnId of the Subnet.
+     * @param subnetDisplayName of the Subnet.
+     * @return the Subnet, or null if there is none.
+     * @throws Exception if there is more than one.
+     */
+    public static Subnet findSubnetByName(
+            final VirtualNetworkClient vcnClient,
+            final String compartmentId,
+            final String vcnId,
+            final String subnetDisplayName
+        ) throws Exception {
+
+        final ListSubnetsResponse listSubnetsResponse = Tracer.request("ListSubnets", span -> {
+            final ListSubnetsResponse response = vcnClient.listSubnets(
+                ListSubnetsRequest.builder()
+                    .compartmentId(compartmentId)
+                    .vcnId(vcnId)
+                    .displayName(subnetDisplayName)
+                    .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        final List<Subnet> subnets = new ArrayList<>();
+        for (final Subnet subnet : listSubnetsResponse.getItems()) {
+            if (subnet.getLifecycleState() != Subnet.LifecycleState.Terminating
+                && subnet.getLifecycleState() != Subnet.LifecycleState.Terminated) {
+                subnets.add(subnet);
+            }
+        }
+
+        if (subnets.size() > 1) {
+            throw new Exception(
+                "Found " + subnets.size() + " subnets with name "
+                + subnetDisplayName + " in compartment " + compartmentId);
+        }
+
+        return subnets.isEmpty() ? null : subnets.get(0);
+    }
+
 
     /**
      * Deletes a subnet and waits for it to be deleted.
@@ -836,8 +1588,11 @@ public class InvokeFunctionExample {
         int numAttempts = 0;
         while (true) {
             try {
-                vcnClient.deleteSubnet(
-                    DeleteSubnetRequest.builder().subnetId(subnetId).build());
+                Tracer.request("DeleteSubnet", span -> {
+                    span.setOcid(subnetId);
+                    return span.setRequestId(vcnClient.deleteSubnet(
+                        DeleteSubnetRequest.builder().subnetId(subnetId).build()).getOpcRequestId());
+                });
                 break;
             } catch (BmcException e) {
                 numAttempts++;
@@ -849,13 +1604,37 @@ public class InvokeFunctionExample {
             }
         }
         // Wait for 'Terminated' state.
-        vcnClient.getWaiters()
-            .forSubnet(
-                GetSubnetRequest.builder()
-                    .subnetId(subnetId)
-                    .build(),
-                Subnet.LifecycleState.Terminated)
-            .execute();
+        waitForSubnet(vcnClient, subnetId, Subnet.LifecycleState.Terminated);
+    }
+
+    /**
+     * Waits for a subnet to reach a lifecycle state.
+     *
+     * @param vcnClient the service client to use to poll the subnet.
+     * @param subnetId  the subnet to wait for.
+     * @param state     the lifecycle state to wait for.
+     * @return the subnet.
+     * @throws Exception
+     */
+    static Subnet waitForSubnet(
+        final VirtualNetworkClient vcnClient,
+        final String subnetId,
+        final Subnet.LifecycleState state
+        ) throws Exception {
+
+        return Tracer.trace("WaitForSubnet", span -> {
+            span.setOcid(subnetId).setAttribute("oci.lifecycle_state", state.name());
+            final GetSubnetResponse getSubnetResponse =
+                vcnClient.getWaiters()
+                    .forSubnet(
+                        GetSubnetRequest.builder()
+                            .subnetId(subnetId)
+                            .build(),
+                        state)
+                    .execute();
+            span.setRequestId(getSubnetResponse.getOpcRequestId());
+            return getSubnetResponse.getSubnet();
+        });
     }
 
     // === OCI Application Helpers ===
@@ -878,29 +1657,24 @@ public class InvokeFunctionExample {
         ) throws Exception {
 
         // Create a new Application.
-        final CreateApplicationResponse createApplicationResponse =
-            fnManagementClient.createApplication(
-                CreateApplicationRequest.builder()
-                    .createApplicationDetails(
-                        CreateApplicationDetails.builder()
-                            .compartmentId(compartmentId)
-                            .displayName(displayName)
-                            .subnetIds(subnetIds)
-                            .build())
-                    .build());
+        final CreateApplicationResponse createApplicationResponse = Tracer.request("CreateApplication", span -> {
+            final CreateApplicationResponse response =
+                fnManagementClient.createApplication(
+                    CreateApplicationRequest.builder()
+                        .createApplicationDetails(
+                            CreateApplicationDetails.builder()
+                                .compartmentId(compartmentId)
+                                .displayName(displayName)
+                                .subnetIds(subnetIds)
+                                .build())
+                        .build());
+            span.setOcid(response.getApplication().getId()).setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         // Wait for Application to be in 'Active' state.
-        final GetApplicationResponse getApplicationResponse =
-            fnManagementClient
-                .getWaiters()
-                .forApplication(
-                    GetApplicationRequest.builder()
-                        .applicationId(createApplicationResponse.getApplication().getId())
-                        .build(),
-                    Application.LifecycleState.Active)
-                .execute();
-
-        return getApplicationResponse.getApplication();
+        return waitForApplication(
+            fnManagementClient, createApplicationResponse.getApplication().getId(), Application.LifecycleState.Active);
     }
 
     /**
@@ -925,8 +1699,11 @@ public class InvokeFunctionExample {
                 .compartmentId(compartmentId)
                 .build();
 
-        final ListApplicationsResponse resp = 
-            fnManagementClient.listApplications(listApplicationsRequest);
+        final ListApplicationsResponse resp = Tracer.request("ListApplications", span -> {
+            final ListApplicationsResponse response = fnManagementClient.listApplications(listApplicationsRequest);
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         if (resp.getItems().size() != 1) {
             throw new Exception(
@@ -938,6 +1715,49 @@ public class InvokeFunctionExample {
         return application;
     }
 
+    /**
+     * Finds a uniquely named Application in the specified compartment, ignoring
+     * Applications which are being or have been deleted.
+     *
+     * @param fnManagementClient the service client to use to get the Application information.
+     * @param compartmentId of the application.
+     * @param applicationDisplayName of the application.
+     * @return the ApplicationSummary, or null if there is none.
+     * @throws Exception if there is more than one.
+     */
+    public static ApplicationSummary findApplicationByName(
+        final FunctionsManagementClient fnManagementClient,
+        final String compartmentId,
+        final String applicationDisplayName
+        ) throws Exception {
+
+        final ListApplicationsResponse resp = Tracer.request("ListApplications", span -> {
+            final ListApplicationsResponse response = fnManagementClient.listApplications(
+                ListApplicationsRequest.builder()
+                    .displayName(applicationDisplayName)
+                    .compartmentId(compartmentId)
+                    .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        final List<ApplicationSummary> applications = new ArrayList<>();
+        for (final ApplicationSummary application : resp.getItems()) {
+            if (application.getLifecycleState() != Application.LifecycleState.Deleting
+                && application.getLifecycleState() != Application.LifecycleState.Deleted) {
+                applications.add(application);
+            }
+        }
+
+        if (applications.size() > 1) {
+            throw new Exception(
+                    "Found " + applications.size() + " applications with name "
+                    + applicationDisplayName + " in compartment " + compartmentId);
+        }
+
+        return applications.isEmpty() ? null : applications.get(0);
+    }
+
     /**
      * Deletes an Application and waits for it to be deleted.
      *
@@ -951,17 +1771,44 @@ public class InvokeFunctionExample {
         ) throws Exception {
 
         // Delete the specified Application
-        fnManagementClient.deleteApplication(
-            DeleteApplicationRequest.builder()
-                .applicationId(applicationId)
-                .build());
+        Tracer.request("DeleteApplication", span -> {
+            span.setOcid(applicationId);
+            return span.setRequestId(fnManagementClient.deleteApplication(
+                DeleteApplicationRequest.builder()
+                    .applicationId(applicationId)
+                    .build()).getOpcRequestId());
+        });
 
         // Wait for the 'Deleted' status.
-        fnManagementClient.getWaiters()
-            .forApplication(
-                GetApplicationRequest.builder().applicationId(applicationId).build(),
-                Application.LifecycleState.Deleted)
-            .execute();
+        waitForApplication(fnManagementClient, applicationId, Application.LifecycleState.Deleted);
+    }
+
+    /**
+     * Waits for an Application to reach a lifecycle state.
+     *
+     * @param fnManagementClient the service client to use to poll the Application.
+     * @param applicationId the Application to wait for.
+     * @param state the lifecycle state to wait for.
+     * @return the Application.
+     * @throws Exception
+     */
+    static Application waitForApplication(
+        final FunctionsManagementClient fnManagementClient,
+        final String applicationId,
+        final Application.LifecycleState state
+        ) throws Exception {
+
+        return Tracer.trace("WaitForApplication", span -> {
+            span.setOcid(applicationId).setAttribute("oci.lifecycle_state", state.name());
+            final GetApplicationResponse getApplicationResponse =
+                fnManagementClient.getWaiters()
+                    .forApplication(
+                        GetApplicationRequest.builder().applicationId(applicationId).build(),
+                        state)
+                    .execute();
+            span.setRequestId(getApplicationResponse.getOpcRequestId());
+            return getApplicationResponse.getApplication();
+        });
     }
 
     // === OCI Function Helpers ===
@@ -978,7 +1825,7 @@ public class InvokeFunctionExample {
      * @return the created Function.
      * @throws Exception
      */
-    private static Function createFunction(
+    static Function createFunction(
         final FunctionsManagementClient fnManagementClient,
         final String applicationId,
         final String displayName,
@@ -988,30 +1835,26 @@ public class InvokeFunctionExample {
         ) throws Exception {
 
         // Create a new Function.
-        final CreateFunctionResponse createFunctionResponse =
-            fnManagementClient.createFunction(
-                CreateFunctionRequest.builder()
-                    .createFunctionDetails(
-                        CreateFunctionDetails.builder()
-                            .applicationId(applicationId)
-                            .displayName(displayName)
-                            .image(image)
-                            .memoryInMBs(memoryInMBs)
-                            .timeoutInSeconds(timeoutInSeconds)
-                            .build())
-                    .build());
+        final CreateFunctionResponse createFunctionResponse = Tracer.request("CreateFunction", span -> {
+            final CreateFunctionResponse response =
+                fnManagementClient.createFunction(
+                    CreateFunctionRequest.builder()
+                        .createFunctionDetails(
+                            CreateFunctionDetails.builder()
+                                .applicationId(applicationId)
+                                .displayName(displayName)
+                                .image(image)
+                                .memoryInMBs(memoryInMBs)
+                                .timeoutInSeconds(timeoutInSeconds)
+                                .build())
+                        .build());
+            span.setOcid(response.getFunction().getId()).setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         // Wait for Function to be in 'Active' state.
-        final GetFunctionResponse getFunctionResponse =
-            fnManagementClient.getWaiters()
-                .forFunction(
-                    GetFunctionRequest.builder()
-                        .functionId(createFunctionResponse.getFunction().getId())
-                        .build(),
-                    Function.LifecycleState.Active)
-                .execute();
-
-        return getFunctionResponse.getFunction();
+        return waitForFunction(
+            fnManagementClient, createFunctionResponse.getFunction().getId(), Function.LifecycleState.Active);
     }
 
     /**
@@ -1056,15 +1899,132 @@ public class InvokeFunctionExample {
                 .displayName(functionDisplayName)
                 .build();
 
-        final ListFunctionsResponse listFunctionsResponse = 
-            fnManagementClient.listFunctions(listFunctionsRequest);
+        final ListFunctionsResponse listFunctionsResponse = Tracer.request("ListFunctions", span -> {
+            final ListFunctionsResponse response = fnManagementClient.listFunctions(listFunctionsRequest);
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
 
         if (listFunctionsResponse.getItems().size() != 1) {
             throw new Exception("Could not find function with name " 
                 + functionDisplayName + " in application " + applicationId);
         }
 
-        return listFunctionsResponse.getItems().get(0);
+        // Start connecting to the endpoint, if enabled, before the first invocation needs it.
+        final FunctionSummary fn = listFunctionsResponse.getItems().get(0);
+        ConnectionWarmer.warm(fn.getInvokeEndpoint());
+        return fn;
+    }
+
+    /**
+     * Finds a uniquely named Function in the specified Application, ignoring
+     * Functions which are being or have been deleted.
+     *
+     * @param fnManagementClient the service client to use to get the Function information.
+     * @param applicationId of the function to find.
+     * @param functionDisplayName of the function to find.
+     * @return the FunctionSummary, or null if there is none.
+     * @throws Exception if there is more than one.
+     */
+    public static FunctionSummary findFunctionByName(
+        final FunctionsManagementClient fnManagementClient,
+        final String applicationId,
+        final String functionDisplayName
+        ) throws Exception {
+
+        final ListFunctionsResponse listFunctionsResponse = Tracer.request("ListFunctions", span -> {
+            final ListFunctionsResponse response = fnManagementClient.listFunctions(
+                ListFunctionsRequest.builder()
+                    .applicationId(applicationId)
+                    .displayName(functionDisplayName)
+                    .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        final List<FunctionSummary> functions = new ArrayList<>();
+        for (final FunctionSummary fn : listFunctionsResponse.getItems()) {
+            if (fn.getLifecycleState() != Function.LifecycleState.Deleting
+                && fn.getLifecycleState() != Function.LifecycleState.Deleted) {
+                functions.add(fn);
+            }
+        }
+
+        if (functions.size() > 1) {
+            throw new Exception("Found " + functions.size() + " functions with name "
+                + functionDisplayName + " in application " + applicationId);
+        }
+
+        return functions.isEmpty() ? null : functions.get(0);
+    }
+
+    /**
+     * Gets the current configuration of a Function.
+     *
+     * @param fnManagementClient the service client to use to get the Function.
+     * @param functionId the Function to get.
+     * @return the Function.
+     * @throws Exception
+     */
+    static Function getFunction(
+        final FunctionsManagementClient fnManagementClient,
+        final String functionId
+        ) throws Exception {
+
+        final GetFunctionResponse getFunctionResponse = Tracer.request("GetFunction", span -> {
+            span.setOcid(functionId);
+            final GetFunctionResponse response =
+                fnManagementClient.getFunction(
+                    GetFunctionRequest.builder()
+                        .functionId(functionId)
+                        .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        return getFunctionResponse.getFunction();
+    }
+
+    /**
+     * Updates the image and limits of a Function and waits for it to become available to use.
+     *
+     * @param fnManagementClient the service client to use to update the Function.
+     * @param functionId the Function to update.
+     * @param image an accessible OCIR image implementing the function, or null to leave unchanged.
+     * @param memoryInMBs the maximum ammount of memory available (128, 256, 512, 1024) to the function in MB, or null to leave unchanged.
+     * @param timeoutInSeconds the maximum ammout of time a function can execute (30 - 120) in seconds, or null to leave unchanged.
+     * @return the updated Function.
+     * @throws Exception
+     */
+    static Function updateFunction(
+        final FunctionsManagementClient fnManagementClient,
+        final String functionId,
+        final String image,
+        final Long memoryInMBs,
+        final Integer timeoutInSeconds
+        ) throws Exception {
+
+        // Update the Function.
+        final UpdateFunctionResponse updateFunctionResponse = Tracer.request("UpdateFunction", span -> {
+            span.setOcid(functionId);
+            final UpdateFunctionResponse response =
+                fnManagementClient.updateFunction(
+                    UpdateFunctionRequest.builder()
+                        .functionId(functionId)
+                        .updateFunctionDetails(
+                            UpdateFunctionDetails.builder()
+                                .image(image)
+                                .memoryInMBs(memoryInMBs)
+                                .timeoutInSeconds(timeoutInSeconds)
+                                .build())
+                        .build());
+            span.setRequestId(response.getOpcRequestId());
+            return response;
+        });
+
+        // Wait for Function to be in 'Active' state.
+        return waitForFunction(
+            fnManagementClient, updateFunctionResponse.getFunction().getId(), Function.LifecycleState.Active);
     }
 
     /**
@@ -1080,84 +2040,229 @@ public class InvokeFunctionExample {
         ) throws Exception {
 
         // Delete the specified Function.
-        fnManagementClient.deleteFunction(DeleteFunctionRequest.builder().functionId(functionId).build());
+        Tracer.request("DeleteFunction", span -> {
+            span.setOcid(functionId);
+            return span.setRequestId(fnManagementClient.deleteFunction(
+                DeleteFunctionRequest.builder().functionId(functionId).build()).getOpcRequestId());
+        });
 
         // Wait for the 'Deleted' status.
-        fnManagementClient.getWaiters()
-            .forFunction(
-                GetFunctionRequest.builder().functionId(functionId).build(),
-                Function.LifecycleState.Deleted)
-            .execute();
+        waitForFunction(fnManagementClient, functionId, Function.LifecycleState.Deleted);
+    }
+
+    /**
+     * Waits for a Function to reach a lifecycle state.
+     *
+     * @param fnManagementClient the service client to use to poll the Function.
+     * @param functionId the Function to wait for.
+     * @param state the lifecycle state to wait for.
+     * @return the Function.
+     * @throws Exception
+     */
+    static Function waitForFunction(
+        final FunctionsManagementClient fnManagementClient,
+        final String functionId,
+        final Function.LifecycleState state
+        ) throws Exception {
+
+        return Tracer.trace("WaitForFunction", span -> {
+            span.setOcid(functionId).setAttribute("oci.lifecycle_state", state.name());
+            final GetFunctionResponse getFunctionResponse =
+                fnManagementClient.getWaiters()
+                    .forFunction(
+                        GetFunctionRequest.builder().functionId(functionId).build(),
+                        state)
+                    .execute();
+            span.setRequestId(getFunctionResponse.getOpcRequestId());
+            return getFunctionResponse.getFunction();
+        });
     }
 
     /**
      * Invokes a function.
      * 
-     * @param fnInvokedClient the service client to use to delete the Function.
+     * @param fnInvokedClient the service client for the Function's invoke endpoint, see ServiceClients.functionsInvoke.
      * @param function the Function to invoke.
      * @param payload the payload to pass to the function.
      * 
      * @throws Exception if there is an error when invoking the function.
      */
-    private static String invokeFunction(
+    public static String invokeFunction(
         final FunctionsInvokeClient fnInvokeClient,
         final FunctionSummary fn,
         final String payload
         ) throws Exception {
-        String response;
-        try {
-            System.err.println("Invoking function endpoint - " + fn.getInvokeEndpoint());
 
-            // Configure the client to use the assigned function endpoint.
-            fnInvokeClient.setEndpoint(fn.getInvokeEndpoint());
+        // Skip the network entirely if response caching is enabled and this payload was seen recently,
+        // and share the result of an identical invocation already in flight if coalescing is enabled.
+        return ResponseCache.call(fn, payload,
+            () -> InflightCoalescer.call(fn, payload,
+                () -> invokeFunction(fnInvokeClient, fn, payload, ResponseSinks.toUtf8String())));
+    }
+
+    /**
+     * Invokes a function, streaming the response into a sink.
+     * 
+     * @param fnInvokedClient the service client for the Function's invoke endpoint, see ServiceClients.functionsInvoke.
+     * @param function the Function to invoke.
+     * @param payload the payload to pass to the function.
+     * @param sink the sink to consume the response body.
+     * @return the result of consuming the response.
+     * 
+     * @throws CircuitBreakerOpenException if the function's circuit breaker is open.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public static <T> T invokeFunction(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final String payload,
+        final ResponseSink<T> sink
+        ) throws Exception {
+
+        return invokeFunction(fnInvokeClient, fn, payload, sink, 0);
+    }
+
+    /**
+     * Invokes a function, streaming the response into a sink, and giving up
+     * if the response does not arrive within a read timeout.
+     * 
+     * @param fnInvokedClient the service client for the Function's invoke endpoint, see ServiceClients.functionsInvoke.
+     * @param function the Function to invoke.
+     * @param payload the payload to pass to the function.
+     * @param sink the sink to consume the response body.
+     * @param readTimeoutMillis the read timeout of this request, or 0 for the client's default.
+     * @return the result of consuming the response.
+     * 
+     * @throws CircuitBreakerOpenException if the function's circuit breaker is open.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public static <T> T invokeFunction(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final String payload,
+        final ResponseSink<T> sink,
+        final int readTimeoutMillis
+        ) throws Exception {
+
+        // Wait while the function is at its adaptive in-flight limit, if enabled.
+        return AdaptiveLimiter.call(fn.getId(),
+            () -> invokeFunctionWithinLimit(fnInvokeClient, fn, payload, sink, readTimeoutMillis));
+    }
+
+    /**
+     * Invokes a function as above, without waiting on its adaptive in-flight
+     * limit; for callers which have already taken a place within it.
+     * 
+     * @param fnInvokedClient the service client for the Function's invoke endpoint, see ServiceClients.functionsInvoke.
+     * @param function the Function to invoke.
+     * @param payload the payload to pass to the function.
+     * @param sink the sink to consume the response body.
+     * @param readTimeoutMillis the read timeout of this request, or 0 for the client's default.
+     * @return the result of consuming the response.
+     * 
+     * @throws CircuitBreakerOpenException if the function's circuit breaker is open.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    static <T> T invokeFunctionWithinLimit(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final String payload,
+        final ResponseSink<T> sink,
+        final int readTimeoutMillis
+        ) throws Exception {
+
+        // Fail fast, without a request, while the function is unhealthy.
+        return CircuitBreaker.call(fn.getId(), () -> {
             final InvokeFunctionRequest invokeFunctionRequest = 
                 InvokeFunctionRequest.builder()
                     .functionId(fn.getId())
                     .invokeFunctionBody(
                         StreamUtils.createByteArrayInputStream(
                             payload.getBytes()))
+                    .invocationCallback((readTimeoutMillis > 0) ? readTimeout(readTimeoutMillis) : null)
                     .build();
 
-            // Invoke the function!
-            final InvokeFunctionResponse invokeFunctionResponse = 
-                fnInvokeClient.invokeFunction(invokeFunctionRequest);
+            return Tracer.request("InvokeFunction", span -> {
+                span.setOcid(fn.getId());
 
-            // Handle the response.
-            response = IOUtils.toString(
-                invokeFunctionResponse.getInputStream(), StandardCharsets.UTF_8);
+                // Invoke the function!
+                final InvokeFunctionResponse invokeFunctionResponse =
+                    fnInvokeClient.invokeFunction(invokeFunctionRequest);
+                span.setRequestId(invokeFunctionResponse.getOpcRequestId());
 
-        } catch (final Exception e) {
-            e.printStackTrace();
-            System.err.println("Failed to invoke function: " + e);
-            throw e;
-        }
+                // Handle the response.
+                try (final InputStream body = invokeFunctionResponse.getInputStream()) {
+                    return sink.consume(body);
+                }
+            });
+        });
+    }
 
-        return response;
+    /**
+     * Creates a client for invoking functions which signs requests with the
+     * shared CachingRequestSigner rather than the SDK's default signer, and,
+     * when warming is enabled, shares its pooled connections with the
+     * ConnectionWarmer. Otherwise the client keeps the SDK's own TLS settings.
+     *
+     * @param provider the OCI credentials provider.
+     * @return the invoke client.
+     */
+    static FunctionsInvokeClient newInvokeClient(final AuthenticationDetailsProvider provider) {
+        final Map<SigningStrategy, RequestSignerFactory> requestSignerFactories = new HashMap<>();
+        for (final SigningStrategy signingStrategy : SigningStrategy.values()) {
+            requestSignerFactories.put(signingStrategy, REQUEST_SIGNER_FACTORY.forStrategy(signingStrategy));
+        }
+        // Warming must be enabled before the client is created for the two to share connections.
+        final List<ClientConfigurator> additionalClientConfigurators = new ArrayList<>();
+        if (ConnectionWarmer.isEnabled()) {
+            additionalClientConfigurators.add(ConnectionWarmer.sharedSocketFactory());
+        }
+        return new FunctionsInvokeClient(
+            provider,
+            ClientConfiguration.builder().build(),
+            null,
+            REQUEST_SIGNER_FACTORY,
+            requestSignerFactories,
+            additionalClientConfigurators,
+            null);
     }
 
     // === Utility Helpers ===
 
-    private static String vcnName(final String name) {
+    /**
+     * @param readTimeoutMillis a read timeout.
+     * @return a callback which sets the read timeout of a single request.
+     */
+    static Consumer<Invocation.Builder> readTimeout(final int readTimeoutMillis) {
+        return builder -> builder.property(ClientProperties.READ_TIMEOUT, readTimeoutMillis);
+    }
+
+    static String envOrDefault(final String variable, final String defaultValue) {
+        final String value = System.getenv(variable);
+        return (value != null) ? value : defaultValue;
+    }
+
+    static String vcnName(final String name) {
         return name + "-vcn";
     }
 
-    private static String igName(final String name) {
+    static String igName(final String name) {
         return name + "-ig";
     }
 
-    private static String drtName(final String name) {
+    static String drtName(final String name) {
         return "Default Route Table for " + name + "-vcn";
     }
 
-    private static String subnetName(final String name) {
+    static String subnetName(final String name) {
         return name + "-subnet";
     }
 
-    private static String applicationName(final String name) {
+    static String applicationName(final String name) {
         return  name + "-app";
     }
 
-    private static String functionName(final String name) {
+    static String functionName(final String name) {
         return name + "-fn";
     }
 
@@ -0,0 +1,236 @@
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.model.FunctionSummary;
+import com.oracle.bmc.functions.requests.InvokeFunctionRequest;
+import com.oracle.bmc.functions.responses.InvokeFunctionResponse;
+import com.oracle.bmc.io.DuplicatableInputStream;
+
+/**
+ * A reusable request template for repeatedly invoking a single Function.
+ *
+ * The template resolves everything that does not depend on the payload once:
+ * the function id, and the invoke client, which serves only the function's
+ * invoke endpoint and so is never re-pointed per call. Payloads are encoded into
+ * a per-thread buffer which grows to the largest payload seen and is then
+ * reused, and the request body stream wrapping it is reused too.
+ *
+ * Allocation budget, per steady-state call on a thread that has invoked
+ * before with a payload no larger than its previous largest:
+ *
+ * - 'newRequest(byte[], int)': one InvokeFunctionRequest and its Builder.
+ *
+ * - 'newRequest(CharSequence)': as above, plus one CharBuffer view of the
+ * payload.
+ *
+ * Allocations made by the SDK and Jersey while sending the request, and by
+ * the ResponseSink, are outside this budget. 'make check-alloc' fails if the
+ * budget is exceeded, or if invoking through the template allocates a copy of
+ * the payload per call; 'make bench BENCH=InvokeRequestBenchmark' compares
+ * the two with JMH's '-prof gc'.
+ *
+ * > NB: Requests built on a thread share that thread's buffer, so a request
+ * must be sent before the next one is built on the same thread.
+ */
+public class InvokeRequestTemplate {
+
+    final static int INITIAL_BODY_CAPACITY = 4 * 1024;
+
+    private final FunctionsInvokeClient fnInvokeClient;
+    private final String functionId;
+    private final String invokeEndpoint;
+
+    private final ThreadLocal<ReusableBody> bodies = ThreadLocal.withInitial(ReusableBody::new);
+
+    /**
+     * @param fnInvokeClient the service client for the Function's invoke
+     *                       endpoint, see ServiceClients.functionsInvoke.
+     * @param fn             the Function to invoke.
+     */
+    public InvokeRequestTemplate(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn
+        ) {
+
+        this.fnInvokeClient = fnInvokeClient;
+        this.functionId = fn.getId();
+        this.invokeEndpoint = fn.getInvokeEndpoint();
+    }
+
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    public String getInvokeEndpoint() {
+        return invokeEndpoint;
+    }
+
+    /**
+     * Builds a request whose body is the UTF-8 encoding of the payload.
+     *
+     * @param payload the payload to pass to the function.
+     * @return the request.
+     */
+    public InvokeFunctionRequest newRequest(final CharSequence payload) {
+        return newRequest(bodies.get().encode(payload));
+    }
+
+    /**
+     * Builds a request whose body is a copy of the first 'length' bytes of the
+     * payload.
+     *
+     * @param payload the payload to pass to the function.
+     * @param length  the number of bytes of the payload to send.
+     * @return the request.
+     */
+    public InvokeFunctionRequest newRequest(final byte[] payload, final int length) {
+        return newRequest(bodies.get().copy(payload, length));
+    }
+
+    /**
+     * Invokes the function, streaming the response into a sink.
+     *
+     * @param payload the payload to pass to the function.
+     * @param sink    the sink to consume the response body.
+     * @return the result of consuming the response.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public <T> T invoke(final CharSequence payload, final ResponseSink<T> sink) throws Exception {
+        return send(newRequest(payload), sink);
+    }
+
+    /**
+     * Invokes the function with the first 'length' bytes of the payload,
+     * streaming the response into a sink.
+     *
+     * @param payload the payload to pass to the function.
+     * @param length  the number of bytes of the payload to send.
+     * @param sink    the sink to consume the response body.
+     * @return the result of consuming the response.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public <T> T invoke(final byte[] payload, final int length, final ResponseSink<T> sink) throws Exception {
+        return send(newRequest(payload, length), sink);
+    }
+
+    /**
+     * Invokes the function with the first 'length' bytes of the payload,
+     * giving up if the response does not arrive within a read timeout.
+     *
+     * @param payload           the payload to pass to the function.
+     * @param length            the number of bytes of the payload to send.
+     * @param sink              the sink to consume the response body.
+     * @param readTimeoutMillis the read timeout of this request.
+     * @return the result of consuming the response.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public <T> T invoke(
+        final byte[] payload,
+        final int length,
+        final ResponseSink<T> sink,
+        final int readTimeoutMillis
+        ) throws Exception {
+
+        final InvokeFunctionRequest request = InvokeFunctionRequest.builder()
+            .copy(newRequest(payload, length))
+            .invocationCallback(InvokeFunctionExample.readTimeout(readTimeoutMillis))
+            .build();
+        return send(request, sink);
+    }
+
+    private <T> T send(final InvokeFunctionRequest request, final ResponseSink<T> sink) throws Exception {
+        return Tracer.request("InvokeFunction", span -> {
+            span.setOcid(functionId);
+            final InvokeFunctionResponse invokeFunctionResponse = fnInvokeClient.invokeFunction(request);
+            span.setRequestId(invokeFunctionResponse.getOpcRequestId());
+
+            try (final InputStream body = invokeFunctionResponse.getInputStream()) {
+                return sink.consume(body);
+            }
+        });
+    }
+
+    /**
+     * Invokes the function, decoding the response as a UTF-8 String.
+     *
+     * @param payload the payload to pass to the function.
+     * @return the response from the function.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    public String invoke(final String payload) throws Exception {
+        return invoke(payload, ResponseSinks.toUtf8String());
+    }
+
+    private InvokeFunctionRequest newRequest(final InputStream body) {
+        return InvokeFunctionRequest.builder()
+            .functionId(functionId)
+            .invokeFunctionBody(body)
+            .build();
+    }
+
+    /**
+     * A request body stream over a buffer which is reused between requests.
+     */
+    static class ReusableBody extends ByteArrayInputStream implements DuplicatableInputStream {
+
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private ByteBuffer target = ByteBuffer.wrap(new byte[INITIAL_BODY_CAPACITY]);
+
+        ReusableBody() {
+            super(new byte[0]);
+        }
+
+        ReusableBody encode(final CharSequence payload) {
+            final int maxLength = (int) Math.ceil(payload.length() * (double) encoder.maxBytesPerChar());
+            ensureCapacity(maxLength);
+
+            final CharBuffer source = CharBuffer.wrap(payload);
+            target.clear();
+            encoder.reset();
+            CoderResult result = encoder.encode(source, target, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(target);
+            }
+            if (!result.isUnderflow()) {
+                throw new IllegalStateException("Could not encode payload: " + result);
+            }
+            return reset(target.position());
+        }
+
+        ReusableBody copy(final byte[] payload, final int length) {
+            ensureCapacity(length);
+            System.arraycopy(payload, 0, target.array(), 0, length);
+            return reset(length);
+        }
+
+        @Override
+        public InputStream duplicate() {
+            // The SDK's signer reads a duplicate to compute the content headers.
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        private void ensureCapacity(final int length) {
+            if (target.capacity() < length) {
+                target = ByteBuffer.wrap(new byte[Math.max(length, target.capacity() * 2)]);
+            }
+        }
+
+        private ReusableBody reset(final int length) {
+            this.buf = target.array();
+            this.pos = 0;
+            this.mark = 0;
+            this.count = length;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+/**
+ * Invokes a single, already resolved, Function with a payload.
+ */
+public interface Invoker {
+
+    /**
+     * How an Invoker sends invocations.
+     */
+    enum Transport {
+        // The SDK's blocking Jersey client; one thread per in-flight invocation.
+        JERSEY,
+        // A non-blocking HTTP/2 client; see Http2InvokeTransport.
+        HTTP2
+    }
+
+    /**
+     * Invokes the Function.
+     *
+     * @param payload the payload to pass to the function.
+     * @return the response from the function.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    String invoke(String payload) throws Exception;
+
+    /**
+     * Invokes the Function with a payload of raw bytes. The Invokers made here
+     * send the bytes unchanged, always, bypassing the ResponseCache and
+     * InflightCoalescer; by default they are decoded as UTF-8 and passed to
+     * 'invoke'.
+     *
+     * @param payload the payload to pass to the function.
+     * @return the response from the function.
+     * @throws Exception if there is an error when invoking the function.
+     */
+    default String invoke(final byte[] payload) throws Exception {
+        return invoke(new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Invokes the Function, without blocking if the Invoker's transport
+     * allows. By default the invocation is made on the calling thread.
+     *
+     * @param payload the payload to pass to the function.
+     * @return the response from the function.
+     */
+    default CompletableFuture<String> invokeAsync(final String payload) {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        try {
+            response.complete(invoke(payload));
+        } catch (final Exception e) {
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    /**
+     * An Invoker which invokes a Function over the service clients' invoke
+     * transport.
+     *
+     * @param clients the service clients to use.
+     * @param fn      the Function to invoke.
+     * @return the Invoker.
+     */
+    static Invoker of(final ServiceClients clients, final FunctionSummary fn) {
+        return of(clients, fn, clients.getInvokeTransport());
+    }
+
+    /**
+     * An Invoker which invokes a Function over a transport.
+     *
+     * @param clients   the service clients to use.
+     * @param fn        the Function to invoke.
+     * @param transport the transport to send invocations over.
+     * @return the Invoker.
+     */
+    static Invoker of(final ServiceClients clients, final FunctionSummary fn, final Transport transport) {
+        return (transport == Transport.HTTP2)
+            ? of(clients.http2Invoke(), fn)
+            : of(clients.functionsInvoke(fn.getInvokeEndpoint()), fn);
+    }
+
+    /**
+     * An Invoker which invokes a Function through its endpoint's invoke client,
+     * reusing a request template between invocations, held to the Function's
+     * adaptive in-flight limit when enabled, and guarded by the Function's
+     * circuit breaker. 'invoke' is served from the shared ResponseCache, and
+     * identical in-flight invocations are coalesced, when each is enabled for
+     * the Function; 'invokeAsync' always sends a request, on the calling
+     * thread.
+     *
+     * @param fnInvokeClient the service client for the Function's invoke
+     *                       endpoint, see ServiceClients.functionsInvoke.
+     * @param fn             the Function to invoke.
+     * @return the Invoker.
+     */
+    static Invoker of(final FunctionsInvokeClient fnInvokeClient, final FunctionSummary fn) {
+        final InvokeRequestTemplate template = new InvokeRequestTemplate(fnInvokeClient, fn);
+        final Invoker network = payload -> AdaptiveLimiter.call(template.getFunctionId(),
+            () -> CircuitBreaker.call(template.getFunctionId(), () -> template.invoke(payload)));
+        return new Invoker() {
+
+            @Override
+            public String invoke(final String payload) throws Exception {
+                return ResponseCache.call(fn, payload,
+                    () -> InflightCoalescer.call(fn, payload, () -> network.invoke(payload)));
+            }
+
+            @Override
+            public String invoke(final byte[] payload) throws Exception {
+                return AdaptiveLimiter.call(template.getFunctionId(),
+                    () -> CircuitBreaker.call(template.getFunctionId(),
+                        () -> template.invoke(payload, payload.length, ResponseSinks.toUtf8String())));
+            }
+
+            @Override
+            public CompletableFuture<String> invokeAsync(final String payload) {
+                return network.invokeAsync(payload);
+            }
+        };
+    }
+
+    /**
+     * An Invoker which invokes a Function over a non-blocking HTTP/2
+     * transport, held to the Function's adaptive in-flight limit when
+     * enabled, and guarded by the Function's circuit breaker. 'invoke' is
+     * served from the shared ResponseCache and coalesced as above;
+     * 'invokeAsync' always sends a request, and holds no thread while it is
+     * in flight.
+     *
+     * @param transport the transport to send invocations over.
+     * @param fn        the Function to invoke.
+     * @return the Invoker.
+     */
+    static Invoker of(final Http2InvokeTransport transport, final FunctionSummary fn) {
+        return new Invoker() {
+
+            @Override
+            public String invoke(final String payload) throws Exception {
+                return ResponseCache.call(fn, payload,
+                    () -> InflightCoalescer.call(fn, payload, () -> await(invokeAsync(payload))));
+            }
+
+            @Override
+            public String invoke(final byte[] payload) throws Exception {
+                return await(send(() -> transport.invoke(fn, payload)));
+            }
+
+            @Override
+            public CompletableFuture<String> invokeAsync(final String payload) {
+                return send(() -> transport.invoke(fn, payload));
+            }
+
+            private CompletableFuture<String> send(final Supplier<CompletableFuture<String>> call) {
+                try {
+                    return AdaptiveLimiter.callAsync(fn.getId(), () -> CircuitBreaker.callAsync(fn.getId(), call));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    final CompletableFuture<String> interrupted = new CompletableFuture<>();
+                    interrupted.completeExceptionally(e);
+                    return interrupted;
+                }
+            }
+
+            private String await(final CompletableFuture<String> response) throws Exception {
+                try {
+                    return response.get();
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+/**
+ * Invokes a Function in order per key, and in parallel across keys.
+ *
+ * Each key is hashed onto one of a fixed number of lanes. A lane is a single
+ * thread consuming its own queue, so invocations for a key run one at a time
+ * in submission order, while different lanes share the invoke client and run
+ * concurrently. No lock is held across lanes; throughput scales with the lane
+ * count until the function (or the client's connection pool) saturates.
+ *
+ * > NB: Keys which hash to the same lane are also serialised with each other,
+ * and a slow invocation delays everything queued behind it in its lane.
+ */
+public class KeyedInvoker implements AutoCloseable {
+
+    // Events read ahead of the lanes, per lane.
+    final static int READ_AHEAD = 16;
+
+    final static long CLOSE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private final static JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Invoker invoker;
+    private final List<ExecutorService> lanes;
+
+    /**
+     * @param invoker   the Invoker to pass each payload to.
+     * @param laneCount the number of serial lanes.
+     */
+    public KeyedInvoker(final Invoker invoker, final int laneCount) {
+        this.invoker = invoker;
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            final String threadName = "keyed-invoker-lane-" + i;
+            lanes.add(Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * A KeyedInvoker which invokes a Function through the shared invoke client.
+     *
+     * @param fnInvokeClient the service client to use to invoke the Function.
+     * @param fn             the Function to invoke.
+     * @param laneCount      the number of serial lanes.
+     * @return the KeyedInvoker.
+     */
+    public static KeyedInvoker of(
+        final FunctionsInvokeClient fnInvokeClient,
+        final FunctionSummary fn,
+        final int laneCount
+        ) {
+
+        return new KeyedInvoker(
+            payload -> InvokeFunctionExample.invokeFunction(fnInvokeClient, fn, payload), laneCount);
+    }
+
+    /**
+     * Fan out a file of keyed events over invocations of the example function,
+     * in order per key.
+     *
+     * @param clients       the service clients to use, in the region in which
+     *                      the function exists.
+     * @param compartmentId the compartment in which the function exists.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @param inputFile     an NDJSON file of events, each passed whole as a
+     *                      payload.
+     * @param outputFile    the file to write a JSON line per event to, holding
+     *                      its line number, key, and response or error. An
+     *                      event without a key is written with its error, and
+     *                      not invoked.
+     * @param keyField      the top-level field of each event holding its key.
+     * @param laneCount     the number of serial lanes.
+     * @throws Exception if any event could not be read or invoked.
+     */
+    public static void fanOut(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String inputFile,
+        final String outputFile,
+        final String keyField,
+        final int laneCount
+        ) throws Exception {
+
+        final FunctionSummary fn = InvokeFunctionExample.getUniqueFunctionByName(
+            clients.functionsManagement(),
+            compartmentId,
+            InvokeFunctionExample.applicationName(name),
+            InvokeFunctionExample.functionName(name));
+
+        System.out.println("Fanning out " + inputFile + " over " + laneCount
+            + " lanes to function endpoint - " + fn.getInvokeEndpoint());
+
+        final Semaphore permits = new Semaphore(laneCount * READ_AHEAD);
+        final AtomicLong failed = new AtomicLong();
+        long events = 0L;
+        try (final KeyedInvoker keyedInvoker = of(clients.functionsInvoke(fn.getInvokeEndpoint()), fn, laneCount);
+             final BufferedReader in = Files.newBufferedReader(Paths.get(inputFile), StandardCharsets.UTF_8);
+             final Writer out = Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)) {
+
+            final JsonGenerator output = JSON_FACTORY.createGenerator(out);
+            output.setRootValueSeparator(null);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final long lineNumber = ++events;
+                final String key;
+                try {
+                    key = keyOf(line, keyField, lineNumber);
+                } catch (final IOException e) {
+                    // Nothing can be ordered by a missing key; record the line as failed and go on.
+                    failed.incrementAndGet();
+                    writeResult(output, lineNumber, null, null, e);
+                    continue;
+                }
+                permits.acquire();
+                keyedInvoker.invoke(key, line).whenComplete((response, error) -> {
+                    try {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        }
+                        writeResult(output, lineNumber, key, response, error);
+                    } catch (final IOException e) {
+                        failed.incrementAndGet();
+                        System.err.println("Failed to write the result of line " + lineNumber + ": " + e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+
+            // Closing the lanes waits for every queued event, or fails if they do not all complete.
+            keyedInvoker.close();
+            output.flush();
+        }
+
+        System.out.println("Fanned out " + events + " events into: " + outputFile);
+        if (failed.get() > 0) {
+            throw new Exception(failed.get() + " of " + events + " events failed; see " + outputFile);
+        }
+    }
+
+    /**
+     * Writes the result of an event as a JSON line.
+     */
+    private static void writeResult(
+        final JsonGenerator output,
+        final long lineNumber,
+        final String key,
+        final String response,
+        final Throwable error
+        ) throws IOException {
+
+        synchronized (output) {
+            output.writeStartObject();
+            output.writeNumberField("line", lineNumber);
+            if (key != null) {
+                output.writeStringField("key", key);
+            }
+            if (error == null) {
+                output.writeStringField("response", response);
+            } else {
+                output.writeStringField("error", error.toString());
+            }
+            output.writeEndObject();
+            output.writeRaw('\n');
+        }
+    }
+
+    /**
+     * Queues an invocation behind any earlier invocations with the same key.
+     *
+     * @param key     the entity key to order invocations by.
+     * @param payload the payload to pass to the function.
+     * @return the response from the function, or the error invoking it. A
+     *         failed invocation does not hold up later ones for its key.
+     */
+    public CompletableFuture<String> invoke(final Object key, final String payload) {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        lanes.get(laneOf(key)).execute(() -> {
+            try {
+                result.complete(invoker.invoke(payload));
+            } catch (final Throwable e) {
+                // Anything uncaught would leave the result, and whoever waits on it, hanging.
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the number of serial lanes.
+     */
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * Completes the invocations already queued, then stops the lanes.
+     *
+     * @throws IllegalStateException if the queued invocations do not complete
+     *         within 'CLOSE_TIMEOUT_MILLIS'; those still running are
+     *         interrupted, and those still queued never run.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        for (final ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        int unfinished = 0;
+        for (final ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                unfinished += lane.shutdownNow().size() + 1;
+            }
+        }
+        if (unfinished > 0) {
+            throw new IllegalStateException("At least " + unfinished
+                + " invocations did not complete within " + CLOSE_TIMEOUT_MILLIS + "ms of closing");
+        }
+    }
+
+    /**
+     * Reads the key of an event from one of its top-level fields.
+     */
+    static String keyOf(final String event, final String keyField, final long lineNumber) throws IOException {
+        try (final JsonParser parser = JSON_FACTORY.createParser(event)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Line " + lineNumber + " is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (keyField.equals(field) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Line " + lineNumber + " has no '" + keyField + "' field");
+    }
+
+    int laneOf(final Object key) {
+        // Spread the high bits, as HashMap does, so keys with similar hashes use different lanes.
+        final int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.size());
+    }
+}
@@ -0,0 +1,327 @@
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.oracle.bmc.Region;
+import com.oracle.bmc.auth.AuthenticationDetailsProvider;
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Drives a Function at a target request rate using an open-loop arrival
+ * schedule.
+ *
+ * Requests are issued at their scheduled arrival time regardless of how many
+ * earlier requests are still outstanding, and each latency is measured from
+ * the scheduled (not the actual) start time. A slow response therefore delays
+ * no later request, and any queueing behind it is charged to the requests that
+ * waited, so coordinated omission does not hide tail latency.
+ *
+ * Requests are issued with 'Invoker.invokeAsync', which always sends a
+ * request, so the response cache and in-flight coalescing never hide the
+ * Function's latency. Over a blocking transport each worker thread holds one
+ * request in flight; over a non-blocking one a worker only starts the
+ * request, so in-flight requests are not bounded by the number of workers.
+ */
+public class LoadGenerator {
+
+    /**
+     * How inter-arrival times are chosen.
+     */
+    public enum Arrival {
+        // A request every 1/rate seconds.
+        CONSTANT,
+        // Exponentially distributed inter-arrival times with a mean of 1/rate seconds.
+        POISSON
+    }
+
+    private final Invoker invoker;
+    private final String payload;
+    private final double ratePerSecond;
+    private final long durationNanos;
+    private final Arrival arrival;
+    private final int maxInFlight;
+
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram total = new Histogram(3);
+    private final AtomicLong intervalErrors = new AtomicLong();
+    // Counts the requests in flight, plus one held by the generator until it stops
+    // issuing requests; the latch opens when the count reaches zero.
+    private final AtomicLong inFlight = new AtomicLong(1L);
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private long totalErrors;
+
+    /**
+     * @param invoker         the Invoker to drive.
+     * @param payload         the payload to pass to each invocation.
+     * @param ratePerSecond   the target request rate.
+     * @param durationSeconds how long to generate load for.
+     * @param arrival         the arrival model.
+     * @param maxInFlight     the number of worker threads issuing requests.
+     *                        Requests arriving while all workers are busy queue,
+     *                        and the time spent queueing is recorded.
+     */
+    public LoadGenerator(
+        final Invoker invoker,
+        final String payload,
+        final double ratePerSecond,
+        final long durationSeconds,
+        final Arrival arrival,
+        final int maxInFlight
+        ) {
+
+        this.invoker = invoker;
+        this.payload = payload;
+        this.ratePerSecond = ratePerSecond;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.arrival = arrival;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Load test the example function, or a local stub server standing in for it.
+     *
+     * @param provider        the OCI credentials provider.
+     * @param region          the OCI region in which the function exists.
+     * @param compartmentId   the compartment in which the function exists.
+     * @param name            a name prefix to easilly identifty the resources.
+     * @param payload         the payload to pass to each invocation.
+     * @param ratePerSecond   the target request rate.
+     * @param durationSeconds how long to generate load for.
+     * @param arrival         the arrival model.
+     * @param maxInFlight     the number of worker threads issuing requests.
+     * @param csvPath         where to write the per-second time series.
+     * @param stubDelayMillis if non-negative, invoke a local stub server which
+     *                        responds after this delay instead of the real
+     *                        function.
+     * @throws Exception
+     */
+    public static void loadTest(
+        final AuthenticationDetailsProvider provider,
+        final Region region,
+        final String compartmentId,
+        final String name,
+        final String payload,
+        final double ratePerSecond,
+        final long durationSeconds,
+        final Arrival arrival,
+        final int maxInFlight,
+        final String csvPath,
+        final long stubDelayMillis
+        ) throws Exception {
+
+        try (final ServiceClients clients = new ServiceClients(provider, region)) {
+            loadTest(clients, compartmentId, name, payload,
+                ratePerSecond, durationSeconds, arrival, maxInFlight, csvPath, stubDelayMillis);
+        }
+    }
+
+    /**
+     * Load test the example function, or a local stub server standing in for it.
+     *
+     * @param clients         the service clients to use, in the region in which
+     *                        the function exists.
+     * @param compartmentId   the compartment in which the function exists.
+     * @param name            a name prefix to easilly identifty the resources.
+     * @param payload         the payload to pass to each invocation.
+     * @param ratePerSecond   the target request rate.
+     * @param durationSeconds how long to generate load for.
+     * @param arrival         the arrival model.
+     * @param maxInFlight     the number of worker threads issuing requests.
+     * @param csvPath         where to write the per-second time series.
+     * @param stubDelayMillis if non-negative, invoke a local stub server which
+     *                        responds after this delay instead of the real
+     *                        function.
+     * @throws Exception
+     */
+    public static void loadTest(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String payload,
+        final double ratePerSecond,
+        final long durationSeconds,
+        final Arrival arrival,
+        final int maxInFlight,
+        final String csvPath,
+        final long stubDelayMillis
+        ) throws Exception {
+
+        StubFunctionServer stub = null;
+
+        try {
+            final FunctionSummary fn;
+            if (stubDelayMillis >= 0) {
+                stub = new StubFunctionServer(stubDelayMillis);
+                fn = FunctionSummary.builder()
+                    .id(StubFunctionServer.STUB_FUNCTION_ID)
+                    .displayName(InvokeFunctionExample.functionName(name))
+                    .invokeEndpoint(stub.getEndpoint())
+                    .build();
+            } else {
+                fn = InvokeFunctionExample.getUniqueFunctionByName(
+                    clients.functionsManagement(),
+                    compartmentId,
+                    InvokeFunctionExample.applicationName(name),
+                    InvokeFunctionExample.functionName(name));
+            }
+
+            System.out.println("Load testing function endpoint - " + fn.getInvokeEndpoint()
+                + " at " + ratePerSecond + " req/s (" + arrival + ") for " + durationSeconds + "s");
+
+            final LoadGenerator generator = new LoadGenerator(
+                Invoker.of(clients, fn), payload, ratePerSecond, durationSeconds, arrival, maxInFlight);
+
+            try (final PrintStream csv = new PrintStream(new FileOutputStream(csvPath), true, "UTF-8")) {
+                generator.run(csv);
+            }
+
+            generator.printSummary(System.out, durationSeconds);
+            if (stub != null) {
+                System.out.println("Stub server held up to " + stub.getPeakInFlight()
+                    + " requests at once over " + stub.getConnections() + " connections");
+            }
+            System.out.println("Time series written to: " + csvPath);
+        } finally {
+            if (stub != null) {
+                stub.close();
+            }
+        }
+    }
+
+    /**
+     * Generates load for the configured duration, writing a row per second of
+     * latency percentiles (in milliseconds) to the CSV stream.
+     *
+     * @param csv the stream to write the time series to.
+     * @throws InterruptedException
+     */
+    public void run(final PrintStream csv) throws InterruptedException {
+        final ExecutorService workers = Executors.newFixedThreadPool(maxInFlight);
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        csv.println("elapsed_s,count,errors,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+
+        final long start = System.nanoTime();
+        final long end = start + durationNanos;
+        reporter.scheduleAtFixedRate(
+            () -> report(csv, System.nanoTime() - start), 1, 1, TimeUnit.SECONDS);
+
+        try {
+            long intendedStart = start;
+            while (intendedStart < end) {
+                final long now = System.nanoTime();
+                if (intendedStart > now) {
+                    LockSupport.parkNanos(intendedStart - now);
+                    continue;
+                }
+                final long scheduled = intendedStart;
+                workers.execute(() -> invokeOnce(scheduled));
+                intendedStart += nextInterArrivalNanos();
+            }
+
+            workers.shutdown();
+            workers.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(2), TimeUnit.NANOSECONDS);
+            completed();
+            if (!drained.await(2, TimeUnit.MINUTES)) {
+                System.err.println("Gave up waiting for " + inFlight.get() + " requests in flight");
+            }
+        } finally {
+            workers.shutdownNow();
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+
+        // Flush whatever completed since the last report.
+        report(csv, System.nanoTime() - start);
+    }
+
+    /**
+     * Prints the overall latency distribution, in milliseconds.
+     *
+     * @param out             the stream to print to.
+     * @param durationSeconds the duration the load was generated for.
+     */
+    public synchronized void printSummary(final PrintStream out, final long durationSeconds) {
+        out.println(String.format(Locale.ROOT,
+            "requests=%d errors=%d achieved=%.1f req/s p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+            total.getTotalCount() + totalErrors,
+            totalErrors,
+            (total.getTotalCount() + totalErrors) / (double) durationSeconds,
+            total.getValueAtPercentile(50.0) / 1000.0,
+            total.getValueAtPercentile(90.0) / 1000.0,
+            total.getValueAtPercentile(99.0) / 1000.0,
+            total.getValueAtPercentile(99.9) / 1000.0,
+            total.getMaxValue() / 1000.0));
+        total.outputPercentileDistribution(out, 1000.0);
+    }
+
+    /**
+     * @return a copy of the overall latency distribution, in microseconds.
+     */
+    public synchronized Histogram getHistogram() {
+        return total.copy();
+    }
+
+    private void invokeOnce(final long intendedStart) {
+        inFlight.incrementAndGet();
+        final CompletableFuture<String> response;
+        try {
+            response = invoker.invokeAsync(payload);
+        } catch (final RuntimeException e) {
+            intervalErrors.incrementAndGet();
+            completed();
+            return;
+        }
+        response.whenComplete((result, error) -> {
+            if (error == null) {
+                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+            } else {
+                intervalErrors.incrementAndGet();
+            }
+            completed();
+        });
+    }
+
+    private void completed() {
+        if (inFlight.decrementAndGet() == 0L) {
+            drained.countDown();
+        }
+    }
+
+    private long nextInterArrivalNanos() {
+        final double meanNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        if (arrival == Arrival.POISSON) {
+            return (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanNanos);
+        }
+        return (long) meanNanos;
+    }
+
+    private synchronized void report(final PrintStream csv, final long elapsedNanos) {
+        final Histogram interval = recorder.getIntervalHistogram();
+        final long errors = intervalErrors.getAndSet(0);
+        total.add(interval);
+        totalErrors += errors;
+
+        csv.println(String.format(Locale.ROOT, "%.3f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f",
+            elapsedNanos / 1e9,
+            interval.getTotalCount(),
+            errors,
+            interval.getValueAtPercentile(50.0) / 1000.0,
+            interval.getValueAtPercentile(90.0) / 1000.0,
+            interval.getValueAtPercentile(99.0) / 1000.0,
+            interval.getValueAtPercentile(99.9) / 1000.0,
+            interval.getMaxValue() / 1000.0));
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * An opt-in cache of Function responses, for functions whose response depends
+ * only on their payload.
+ *
+ * Caching is enabled per Function, by id or display name, as a Function
+ * whose response is not a pure function of its payload would be served stale
+ * responses.
+ *
+ * Responses are keyed by function id and the SHA-256 of the payload, and
+ * expire a fixed time after they were cached. The number of entries is
+ * bounded, and when full the least recently used (LRU) entry is evicted, or
+ * for LFU the least frequently used of the 'LFU_SAMPLE' least recently used
+ * entries, so an eviction costs the same however large the cache.
+ *
+ * Small responses are held on the heap. Responses of at least
+ * 'largeValueBytes' can instead be written to a memory-mapped file, used as a
+ * ring: the heap then holds only the entry's position, and an entry is dropped
+ * once the ring wraps over it. This keeps large responses out of the
+ * collected heap.
+ *
+ * Hit, miss, eviction and expiry counts are exposed over JMX.
+ */
+public class ResponseCache implements ResponseCacheMXBean, AutoCloseable {
+
+    public enum Eviction { LRU, LFU }
+
+    final static String ALL_FUNCTIONS = "*";
+
+    // The entries an LFU eviction chooses between, under the cache's lock.
+    final static int LFU_SAMPLE = 16;
+
+    // Null when response caching is disabled, the default.
+    private static volatile ResponseCache shared;
+
+    private static volatile Set<String> functions = Collections.emptySet();
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Eviction eviction;
+    private final int largeValueBytes;
+
+    // Guarded by 'this'. Iterates least recently used first.
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final FileChannel mappedChannel;
+    private final MappedByteBuffer mapped;
+    private long mappedLap;
+
+    private long hits;
+    private long misses;
+    private long mappedHits;
+    private long evictions;
+    private long expirations;
+    private long mappedBytesWritten;
+
+    /**
+     * @param maxEntries      the maximum number of cached responses.
+     * @param ttlMillis       how long a response stays cached.
+     * @param eviction        which entry to evict when full.
+     * @param mappedFile      a file to hold large responses, or null to hold
+     *                        every response on the heap.
+     * @param mappedBytes     the size of the memory-mapped file.
+     * @param largeValueBytes responses of at least this size go to the
+     *                        memory-mapped file.
+     * @throws IOException if the memory-mapped file could not be mapped.
+     */
+    public ResponseCache(
+        final int maxEntries,
+        final long ttlMillis,
+        final Eviction eviction,
+        final Path mappedFile,
+        final int mappedBytes,
+        final int largeValueBytes
+        ) throws IOException {
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.eviction = eviction;
+        this.largeValueBytes = largeValueBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        if (mappedFile != null) {
+            this.mappedChannel = FileChannel.open(mappedFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.mapped = mappedChannel.map(FileChannel.MapMode.READ_WRITE, 0, mappedBytes);
+        } else {
+            this.mappedChannel = null;
+            this.mapped = null;
+        }
+    }
+
+    /**
+     * Enables response caching for all invocations through the invoke helpers.
+     *
+     * @param cache the cache to use, or null to disable response caching.
+     */
+    public static void setShared(final ResponseCache cache) {
+        if (cache != null) {
+            register(cache);
+        }
+        shared = cache;
+    }
+
+    /**
+     * Sets the Functions whose responses are cached.
+     *
+     * @param functionIdsOrNames the ids or display names of the Functions, or
+     *                           '*' for all Functions.
+     */
+    public static void setFunctions(final Collection<String> functionIdsOrNames) {
+        functions = Collections.unmodifiableSet(new HashSet<>(functionIdsOrNames));
+    }
+
+    /**
+     * @param fn the Function.
+     * @return whether responses of the Function are cached.
+     */
+    public static boolean isEnabled(final FunctionSummary fn) {
+        final Set<String> enabled = functions;
+        return shared != null
+            && (enabled.contains(ALL_FUNCTIONS)
+                || enabled.contains(fn.getId())
+                || (fn.getDisplayName() != null && enabled.contains(fn.getDisplayName())));
+    }
+
+    /**
+     * Returns the cached response of a Function to a payload, or makes the call
+     * and caches its response. Calls are made directly if response caching is
+     * disabled, or not enabled for the Function.
+     *
+     * @param fn      the Function the call invokes.
+     * @param payload the payload the call passes to the Function.
+     * @param call    the call.
+     * @return the response.
+     * @throws Exception if the call fails.
+     */
+    public static String call(final FunctionSummary fn, final String payload, final Callable<String> call)
+        throws Exception {
+
+        final ResponseCache cache = shared;
+        if (cache == null || !isEnabled(fn)) {
+            return call.call();
+        }
+
+        final String key = key(fn.getId(), payload);
+        final String cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final String response = call.call();
+        if (response != null) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * @return the cache key of a Function's response to a payload.
+     */
+    static String key(final String functionId, final String payload) {
+        return functionId + ":" + DigestUtils.sha256Hex(payload);
+    }
+
+    /**
+     * @param key the cache key.
+     * @return the cached response, or null.
+     */
+    public synchronized String get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.cachedAtNanos > ttlNanos) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        if (entry.value == null && !isMappedValid(entry)) {
+            // The ring has wrapped over this entry.
+            entries.remove(key);
+            evictions++;
+            misses++;
+            return null;
+        }
+
+        hits++;
+        entry.uses++;
+        if (entry.value != null) {
+            return entry.value;
+        }
+        mappedHits++;
+        final byte[] bytes = new byte[entry.mappedLength];
+        final ByteBuffer view = mapped.duplicate();
+        view.position((int) entry.mappedOffset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param key      the cache key.
+     * @param response the response to cache.
+     */
+    public synchronized void put(final String key, final String response) {
+        final Entry entry = new Entry(System.nanoTime());
+
+        // A UTF-8 encoding is at most three bytes per char, so shorter responses stay on the heap unencoded.
+        final byte[] bytes = (mapped != null && response.length() * 3L >= largeValueBytes)
+            ? response.getBytes(StandardCharsets.UTF_8)
+            : null;
+        if (bytes != null && bytes.length >= largeValueBytes && bytes.length <= mapped.capacity()) {
+            writeMapped(entry, bytes);
+        } else {
+            entry.value = response;
+        }
+
+        entries.remove(key);
+        while (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(key, entry);
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (shared == this) {
+            shared = null;
+        }
+        if (mappedChannel != null) {
+            mappedChannel.close();
+        }
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        if (eviction == Eviction.LRU) {
+            it.next();
+            it.remove();
+        } else {
+            // Sample the least recently used entries, rather than scan them all under the lock.
+            String victim = null;
+            long fewestUses = Long.MAX_VALUE;
+            for (int i = 0; i < LFU_SAMPLE && it.hasNext(); i++) {
+                final Map.Entry<String, Entry> candidate = it.next();
+                if (candidate.getValue().uses < fewestUses) {
+                    fewestUses = candidate.getValue().uses;
+                    victim = candidate.getKey();
+                }
+            }
+            entries.remove(victim);
+        }
+        evictions++;
+    }
+
+    private void writeMapped(final Entry entry, final byte[] bytes) {
+        long position = mappedBytesWritten - mappedLap * mapped.capacity();
+        if (position + bytes.length > mapped.capacity()) {
+            // Wrap to the start of the ring, skipping the unused tail.
+            mappedBytesWritten += mapped.capacity() - position;
+            mappedLap++;
+            position = 0;
+        }
+
+        final ByteBuffer view = mapped.duplicate();
+        view.position((int) position);
+        view.put(bytes);
+
+        entry.mappedLap = mappedLap;
+        entry.mappedOffset = position;
+        entry.mappedLength = bytes.length;
+        mappedBytesWritten += bytes.length;
+    }
+
+    /**
+     * An entry is intact until the ring's write position passes over it on
+     * the following lap.
+     */
+    private boolean isMappedValid(final Entry entry) {
+        final long position = mappedBytesWritten - mappedLap * mapped.capacity();
+        return entry.mappedLap == mappedLap
+            || (entry.mappedLap == mappedLap - 1 && entry.mappedOffset >= position);
+    }
+
+    private static void register(final ResponseCache cache) {
+        try {
+            final ObjectName name = new ObjectName("InvokeFunctionExample:type=ResponseCache");
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache, name);
+        } catch (final JMException e) {
+            System.err.println("Failed to register response cache metrics: " + e);
+        }
+    }
+
+    // === ResponseCacheMXBean ===
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        final long lookups = hits + misses;
+        return (lookups == 0) ? 0.0 : hits / (double) lookups;
+    }
+
+    @Override
+    public synchronized long getMappedHits() {
+        return mappedHits;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getMappedBytesWritten() {
+        return mappedBytesWritten;
+    }
+
+    private static class Entry {
+
+        final long cachedAtNanos;
+        long uses;
+
+        // Set for entries held on the heap.
+        String value;
+
+        // Set for entries held in the memory-mapped file.
+        long mappedLap;
+        long mappedOffset;
+        int mappedLength;
+
+        Entry(final long cachedAtNanos) {
+            this.cachedAtNanos = cachedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * The JMX view of the ResponseCache, registered as
+ * 'InvokeFunctionExample:type=ResponseCache'.
+ */
+public interface ResponseCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    // Hits served from the memory-mapped tier.
+    long getMappedHits();
+
+    long getEvictions();
+
+    long getExpirations();
+
+    int getSize();
+
+    // Bytes of the memory-mapped tier written since the cache was created.
+    long getMappedBytesWritten();
+
+    void clear();
+}
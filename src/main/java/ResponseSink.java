@@ -0,0 +1,20 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes the body of a Function's response directly from the response
+ * stream.
+ *
+ * @param <T> the result of consuming the response.
+ */
+public interface ResponseSink<T> {
+
+    /**
+     * Consumes the response body. The stream is closed by the caller.
+     *
+     * @param body the response body.
+     * @return the result of consuming the response.
+     * @throws IOException if the response could not be read or forwarded.
+     */
+    T consume(InputStream body) throws IOException;
+}
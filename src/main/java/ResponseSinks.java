@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Common ResponseSinks.
+ *
+ * Apart from 'toUtf8String', none of these sinks materialise the response as
+ * a String or an intermediate byte array; the body is moved from the response
+ * stream straight to its destination.
+ */
+public final class ResponseSinks {
+
+    final static int TRANSFER_CHUNK_SIZE = 64 * 1024;
+
+    private final static JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // One transfer buffer per thread, reused across invocations.
+    private final static ThreadLocal<ByteBuffer> TRANSFER_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TRANSFER_CHUNK_SIZE));
+
+    private ResponseSinks() {
+    }
+
+    /**
+     * Decodes the response as a UTF-8 String.
+     *
+     * @return the sink.
+     */
+    public static ResponseSink<String> toUtf8String() {
+        return body -> IOUtils.toString(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends the response to a file at the channel's current position using
+     * 'FileChannel.transferFrom'.
+     *
+     * @param file the file to write to.
+     * @return the sink, which yields the number of bytes written.
+     */
+    public static ResponseSink<Long> toFile(final FileChannel file) {
+        return body -> {
+            final ReadableByteChannel source = Channels.newChannel(body);
+            final long start = file.position();
+            long position = start;
+            long transferred;
+            while ((transferred = file.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                position += transferred;
+            }
+            file.position(position);
+            return position - start;
+        };
+    }
+
+    /**
+     * Forwards the response to a channel, e.g. a downstream socket, through a
+     * direct buffer reused by the calling thread.
+     *
+     * @param target the channel to write to.
+     * @return the sink, which yields the number of bytes written.
+     */
+    public static ResponseSink<Long> toChannel(final WritableByteChannel target) {
+        if (target instanceof FileChannel) {
+            return toFile((FileChannel) target);
+        }
+        return body -> {
+            final ReadableByteChannel source = Channels.newChannel(body);
+            final ByteBuffer buffer = TRANSFER_BUFFER.get();
+            long written = 0;
+            buffer.clear();
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                written += target.write(buffer);
+                buffer.compact();
+            }
+            return written;
+        };
+    }
+
+    /**
+     * Reads the response into a caller-owned buffer, typically a direct
+     * ByteBuffer reused across invocations. The buffer is cleared before use
+     * and returned flipped, ready for reading.
+     *
+     * @param buffer the buffer to read the response into.
+     * @return the sink, which yields the buffer.
+     */
+    public static ResponseSink<ByteBuffer> toBuffer(final ByteBuffer buffer) {
+        return body -> {
+            final ReadableByteChannel source = Channels.newChannel(body);
+            buffer.clear();
+            while (source.read(buffer) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    if (body.read() >= 0) {
+                        throw new IOException(
+                            "Function response exceeds buffer capacity of " + buffer.capacity() + " bytes");
+                    }
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        };
+    }
+
+    /**
+     * Receives each token of a JSON response as it is parsed.
+     */
+    public interface JsonTokenCallback {
+
+        /**
+         * @param token  the current token.
+         * @param parser the parser, positioned on the token.
+         * @throws IOException
+         */
+        void onToken(JsonToken token, JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Parses the response as a stream of JSON tokens, without building a tree
+     * or a String of the whole document.
+     *
+     * @param callback the callback to receive each token.
+     * @return the sink, which yields the number of tokens parsed.
+     */
+    public static ResponseSink<Long> toJson(final JsonTokenCallback callback) {
+        return body -> {
+            long tokens = 0;
+            try (final JsonParser parser = JSON_FACTORY.createParser(body)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    callback.onToken(token, parser);
+                    tokens++;
+                }
+            }
+            return tokens;
+        };
+    }
+}
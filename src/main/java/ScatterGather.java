@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BinaryOperator;
+
+import com.oracle.bmc.functions.model.FunctionSummary;
+
+/**
+ * Splits a large input file into chunks, invokes the example function once
+ * per chunk in parallel, and merges the responses with a Reducer: a small
+ * map-reduce over the invoke path.
+ *
+ * The input is streamed, never held whole, and sent as raw bytes: nothing is
+ * decoded, and line endings (LF or CRLF) are kept. Each chunk is cut after
+ * the last newline within the chunk size, so a record is never split across
+ * invocations; a single line longer than the chunk size is split into pieces
+ * of the chunk size. At most a few chunks per worker are held at once,
+ * whether waiting to be invoked or waiting for an earlier chunk's response.
+ *
+ * A chunk which fails with a 429, a 5xx or a transport error, or which is
+ * rejected by an open circuit breaker, is retried with exponential backoff.
+ * Any other error, or running out of retries, fails the whole run.
+ *
+ * Responses are passed to the Reducer in chunk order, whatever order they
+ * complete in.
+ */
+public class ScatterGather implements AutoCloseable {
+
+    final static String CONCAT = "concat";
+    final static long INITIAL_BACKOFF_MILLIS = 500L;
+    final static long MAX_BACKOFF_MILLIS = 30000L;
+
+    // Chunks read ahead of the workers, per worker.
+    final static int READ_AHEAD = 2;
+
+    /**
+     * Merges the responses of each chunk.
+     */
+    public interface Reducer {
+
+        /**
+         * @param chunk    the index of the chunk, starting at 0. Called for each
+         *                 chunk in order.
+         * @param response the response from the function for the chunk.
+         * @throws IOException if the response could not be written.
+         */
+        void accept(long chunk, String response) throws IOException;
+
+        /**
+         * Called once every chunk has been accepted.
+         *
+         * @throws IOException if the result could not be written.
+         */
+        default void finish() throws IOException {
+        }
+    }
+
+    private final Invoker invoker;
+    private final int chunkBytes;
+    private final int retries;
+
+    private final ExecutorService workers;
+    private final Semaphore permits;
+
+    /**
+     * @param invoker     the Invoker to pass each chunk to.
+     * @param chunkBytes  the size a chunk is kept within, in bytes.
+     * @param parallelism the number of chunks to invoke concurrently.
+     * @param retries     the number of times to retry a failed chunk.
+     */
+    public ScatterGather(final Invoker invoker, final int chunkBytes, final int parallelism, final int retries) {
+        this.invoker = invoker;
+        this.chunkBytes = chunkBytes;
+        this.retries = retries;
+        this.workers = Executors.newFixedThreadPool(parallelism);
+        this.permits = new Semaphore(parallelism * READ_AHEAD);
+    }
+
+    /**
+     * A Reducer which writes each response, in chunk order, as it arrives.
+     *
+     * @param out where to write the responses.
+     * @return the Reducer.
+     */
+    public static Reducer concat(final Writer out) {
+        return new Reducer() {
+
+            @Override
+            public void accept(final long chunk, final String response) throws IOException {
+                out.write(response);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * A Reducer which folds the responses, in chunk order, into one result
+     * and writes it once every chunk has been accepted.
+     *
+     * @param combine combines the result so far with the next response.
+     * @param out     where to write the result.
+     * @return the Reducer.
+     */
+    public static Reducer combining(final BinaryOperator<String> combine, final Writer out) {
+        return new Reducer() {
+
+            private String result;
+
+            @Override
+            public void accept(final long chunk, final String response) {
+                result = (result == null) ? response : combine.apply(result, response);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                if (result != null) {
+                    out.write(result);
+                }
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Scatter an input file over invocations of the example function, and
+     * gather the responses.
+     *
+     * @param clients       the service clients to use, in the region in which
+     *                      the function exists.
+     * @param compartmentId the compartment in which the function exists.
+     * @param name          a name prefix to easilly identifty the resources.
+     * @param inputFile     the file to split into chunks.
+     * @param outputFile    the file to write the reduced result to.
+     * @param reducer       'concat' to concatenate the responses, or the name
+     *                      of a class implementing BinaryOperator<String> to
+     *                      combine them with.
+     * @param chunkBytes    the size a chunk is kept within, in bytes.
+     * @param parallelism   the number of chunks to invoke concurrently.
+     * @param retries       the number of times to retry a failed chunk.
+     * @throws Exception
+     */
+    public static void scatter(
+        final ServiceClients clients,
+        final String compartmentId,
+        final String name,
+        final String inputFile,
+        final String outputFile,
+        final String reducer,
+        final int chunkBytes,
+        final int parallelism,
+        final int retries
+        ) throws Exception {
+
+        final FunctionSummary fn = InvokeFunctionExample.getUniqueFunctionByName(
+            clients.functionsManagement(),
+            compartmentId,
+            InvokeFunctionExample.applicationName(name),
+            InvokeFunctionExample.functionName(name));
+
+        System.out.println("Scattering " + inputFile + " over function endpoint - " + fn.getInvokeEndpoint());
+
+        try (final ScatterGather scatterGather = new ScatterGather(
+                Invoker.of(clients, fn), chunkBytes, parallelism, retries);
+             final Writer out = Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)) {
+
+            final long chunks = scatterGather.run(Paths.get(inputFile), reducer(reducer, out));
+            System.out.println("Gathered " + chunks + " chunks into: " + outputFile);
+        }
+    }
+
+    /**
+     * Invokes the function for each chunk of a file, and passes the responses
+     * to a Reducer in chunk order.
+     *
+     * @param inputFile the file to split into chunks.
+     * @param reducer   the Reducer to merge the responses with.
+     * @return the number of chunks.
+     * @throws Exception if a chunk could not be invoked, or the reducer failed.
+     */
+    public long run(final Path inputFile, final Reducer reducer) throws Exception {
+        final Gatherer gatherer = new Gatherer(reducer);
+
+        long chunks = 0L;
+        try (final InputStream in = Files.newInputStream(inputFile)) {
+            final byte[] buffer = new byte[chunkBytes];
+            int filled = 0;
+            boolean eof = false;
+
+            while (!eof && !gatherer.failed()) {
+                while (filled < buffer.length) {
+                    final int read = in.read(buffer, filled, buffer.length - filled);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    filled += read;
+                }
+                if (filled == 0) {
+                    break;
+                }
+
+                // Cut after the last newline, unless the buffer holds the end of the file or part of one long line.
+                int end = filled;
+                if (!eof) {
+                    for (int i = filled - 1; i >= 0; i--) {
+                        if (buffer[i] == '\n') {
+                            end = i + 1;
+                            break;
+                        }
+                    }
+                }
+                submit(gatherer, chunks++, Arrays.copyOf(buffer, end));
+                System.arraycopy(buffer, end, buffer, 0, filled - end);
+                filled -= end;
+            }
+        }
+
+        gatherer.await(chunks);
+        reducer.finish();
+        return chunks;
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private void submit(final Gatherer gatherer, final long index, final byte[] chunk)
+        throws InterruptedException {
+
+        permits.acquire();
+        workers.execute(() -> {
+            try {
+                gatherer.completed(index, invokeWithRetries(index, chunk), null);
+            } catch (final Throwable e) {
+                // Anything uncaught would leave the Gatherer waiting for this chunk forever.
+                gatherer.completed(index, null, e);
+            }
+        });
+    }
+
+    private String invokeWithRetries(final long index, final byte[] chunk) throws Exception {
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0;; attempt++) {
+            try {
+                return invoker.invoke(chunk);
+            } catch (final CircuitBreakerOpenException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                Thread.sleep(Math.max(e.getRetryAfterMillis(), backoffMillis));
+            } catch (final Exception e) {
+                if (attempt >= retries || !CircuitBreaker.isFailure(e)) {
+                    throw e;
+                }
+                System.err.println("Retrying chunk " + index + " in " + backoffMillis + "ms: " + e);
+                Thread.sleep(backoffMillis);
+            }
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+    }
+
+    private static Reducer reducer(final String reducer, final Writer out) throws Exception {
+        if (CONCAT.equals(reducer)) {
+            return concat(out);
+        }
+        @SuppressWarnings("unchecked")
+        final BinaryOperator<String> combine =
+            (BinaryOperator<String>) Class.forName(reducer).getDeclaredConstructor().newInstance();
+        return combining(combine, out);
+    }
+
+    /**
+     * Holds completed chunks until every earlier chunk has completed, then
+     * passes them to the Reducer in order.
+     */
+    private class Gatherer {
+
+        private final Reducer reducer;
+
+        // Guarded by 'this'.
+        private final Map<Long, String> completed = new HashMap<>();
+        private long next;
+        private Exception error;
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long expected = -1L;
+
+        Gatherer(final Reducer reducer) {
+            this.reducer = reducer;
+        }
+
+        synchronized boolean failed() {
+            return error != null;
+        }
+
+        synchronized void completed(final long index, final String response, final Throwable e) {
+            if (error != null) {
+                permits.release();
+                return;
+            }
+            if (e != null) {
+                fail(new Exception("Failed to invoke chunk " + index + ": " + e, e));
+                permits.release();
+                return;
+            }
+
+            completed.put(index, response);
+            String ready;
+            while ((ready = completed.remove(next)) != null) {
+                try {
+                    reducer.accept(next, ready);
+                } catch (final IOException reduceError) {
+                    fail(reduceError);
+                    return;
+                } finally {
+                    // A chunk's permit is held until it is reduced, bounding the chunks held in memory.
+                    permits.release();
+                }
+                next++;
+            }
+            if (next == expected) {
+                done.complete(null);
+            }
+        }
+
+        synchronized void fail(final Exception e) {
+            error = e;
+            permits.release(completed.size());
+            completed.clear();
+            done.completeExceptionally(e);
+        }
+
+        void await(final long chunks) throws Exception {
+            synchronized (this) {
+                expected = chunks;
+                if (error == null && next == expected) {
+                    done.complete(null);
+                }
+            }
+            try {
+                done.get();
+            } catch (final ExecutionException e) {
+                throw (Exception) e.getCause();
+            }
+        }
+    }
+}
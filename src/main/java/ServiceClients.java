@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.oracle.bmc.Region;
+import com.oracle.bmc.auth.AuthenticationDetailsProvider;
+import com.oracle.bmc.core.VirtualNetworkClient;
+import com.oracle.bmc.functions.FunctionsInvokeClient;
+import com.oracle.bmc.functions.FunctionsManagementClient;
+import com.oracle.bmc.identity.IdentityClient;
+
+/**
+ * The OCI service clients used by the example, each created on first use.
+ *
+ * Creating a client loads and initialises Jersey, Jackson and the signing
+ * stack, so a command only pays for the clients it actually calls. Clients
+ * are shared by all the commands of a single run and closed together.
+ *
+ * An invoke client sends every request to a single endpoint, so there is one
+ * invoke client per function invoke endpoint, pointed at it once when it is
+ * created and never re-pointed.
+ */
+public class ServiceClients implements AutoCloseable {
+
+    private final AuthenticationDetailsProvider provider;
+    private final Region region;
+
+    private IdentityClient identityClient;
+    private VirtualNetworkClient vcnClient;
+    private FunctionsManagementClient fnManagementClient;
+    private final Map<String, FunctionsInvokeClient> fnInvokeClients = new HashMap<>();
+    private Http2InvokeTransport http2InvokeTransport;
+
+    private volatile Invoker.Transport invokeTransport = Invoker.Transport.JERSEY;
+    private volatile int http2IoThreads = Runtime.getRuntime().availableProcessors();
+    private volatile int http2ResponseTimeoutMillis = Http2InvokeTransport.DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+
+    /**
+     * @param provider the OCI credentials provider.
+     * @param region   the OCI region of the management clients.
+     */
+    public ServiceClients(final AuthenticationDetailsProvider provider, final Region region) {
+        this.provider = provider;
+        this.region = region;
+    }
+
+    public AuthenticationDetailsProvider getProvider() {
+        return provider;
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the transport Invokers use unless told otherwise.
+     */
+    public Invoker.Transport getInvokeTransport() {
+        return invokeTransport;
+    }
+
+    public void setInvokeTransport(final Invoker.Transport invokeTransport) {
+        this.invokeTransport = invokeTransport;
+    }
+
+    /**
+     * @param http2IoThreads the I/O threads of the HTTP/2 invoke transport,
+     *                       if it has not yet been created.
+     */
+    public void setHttp2IoThreads(final int http2IoThreads) {
+        this.http2IoThreads = http2IoThreads;
+    }
+
+    /**
+     * @param http2ResponseTimeoutMillis the response timeout of the HTTP/2
+     *                                   invoke transport, if it has not yet
+     *                                   been created.
+     */
+    public void setHttp2ResponseTimeoutMillis(final int http2ResponseTimeoutMillis) {
+        this.http2ResponseTimeoutMillis = http2ResponseTimeoutMillis;
+    }
+
+    public synchronized IdentityClient identity() {
+        if (identityClient == null) {
+            identityClient = new IdentityClient(provider);
+            identityClient.setRegion(region);
+        }
+        return identityClient;
+    }
+
+    public synchronized VirtualNetworkClient virtualNetwork() {
+        if (vcnClient == null) {
+            vcnClient = new VirtualNetworkClient(provider);
+            vcnClient.setRegion(region);
+        }
+        return vcnClient;
+    }
+
+    public synchronized FunctionsManagementClient functionsManagement() {
+        if (fnManagementClient == null) {
+            fnManagementClient = new FunctionsManagementClient(provider);
+            fnManagementClient.setRegion(region);
+        }
+        return fnManagementClient;
+    }
+
+    /**
+     * The invoke client has no region; each serves a single invoke endpoint.
+     *
+     * @param invokeEndpoint the endpoint, e.g. 'FunctionSummary.getInvokeEndpoint()'.
+     * @return the invoke client for the endpoint.
+     */
+    public synchronized FunctionsInvokeClient functionsInvoke(final String invokeEndpoint) {
+        return fnInvokeClients.computeIfAbsent(invokeEndpoint, endpoint -> {
+            final FunctionsInvokeClient client = InvokeFunctionExample.newInvokeClient(provider);
+            client.setEndpoint(endpoint);
+            return client;
+        });
+    }
+
+    /**
+     * The HTTP/2 invoke transport, like the invoke client, serves any endpoint.
+     */
+    public synchronized Http2InvokeTransport http2Invoke() {
+        if (http2InvokeTransport == null) {
+            http2InvokeTransport = new Http2InvokeTransport(provider, http2IoThreads, http2ResponseTimeoutMillis);
+            ConnectionWarmer.addTransport(http2InvokeTransport);
+        }
+        return http2InvokeTransport;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (http2InvokeTransport != null) {
+            try {
+                http2InvokeTransport.close();
+            } catch (final IOException e) {
+                System.err.println("Failed to close the HTTP/2 invoke transport: " + e);
+            }
+        }
+        for (final FunctionsInvokeClient fnInvokeClient : fnInvokeClients.values()) {
+            fnInvokeClient.close();
+        }
+        if (fnManagementClient != null) {
+            fnManagementClient.close();
+        }
+        if (vcnClient != null) {
+            vcnClient.close();
+        }
+        if (identityClient != null) {
+            identityClient.close();
+        }
+    }
+}
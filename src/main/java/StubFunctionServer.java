@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncResponseBuilder;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.reactor.IOSessionListener;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+
+/**
+ * A loopback HTTP server which stands in for a Function's invoke endpoint.
+ *
+ * Every request is answered by echoing its body after a fixed delay, which
+ * makes it possible to exercise the invoke path (including request signing)
+ * without any OCI resources.
+ *
+ * The server speaks HTTP/1.1 to the SDK's client and cleartext HTTP/2 (h2c)
+ * to the HTTP/2 invoke transport. Response bodies are delayed without
+ * holding a thread, and the server counts the connections it accepts and the most
+ * requests it held at once, which shows whether a client multiplexes
+ * requests over its connections.
+ */
+public class StubFunctionServer implements AutoCloseable {
+
+    final static String STUB_FUNCTION_ID = "ocid1.fnfunc.oc1.phx.stub";
+    final static int MAX_CONCURRENT_STREAMS = 10000;
+
+    private final HttpAsyncServer server;
+    private final ScheduledExecutorService responder;
+    private final InetSocketAddress address;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong peakInFlight = new AtomicLong();
+
+    /**
+     * Starts a stub server on an ephemeral loopback port.
+     *
+     * @param delayMillis how long to wait before responding to each request.
+     * @throws IOException if the server could not be bound.
+     */
+    public StubFunctionServer(final long delayMillis) throws IOException {
+        this.responder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "stub-function-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = H2ServerBootstrap.bootstrap()
+            // Serves HTTP/1.1, or HTTP/2 to a client which opens with the HTTP/2 preface.
+            .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+            // Let the client, not the stub's stream limit, bound the requests in flight.
+            .setH2Config(H2Config.custom()
+                .setMaxConcurrentStreams(MAX_CONCURRENT_STREAMS)
+                .build())
+            .setIOSessionListener(new ConnectionCounter())
+            .register("*", new EchoHandler(delayMillis))
+            .create();
+        this.server.start();
+        try {
+            final ListenerEndpoint endpoint =
+                server.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).get();
+            this.address = (InetSocketAddress) endpoint.getAddress();
+        } catch (final InterruptedException | ExecutionException e) {
+            close();
+            throw new IOException("Failed to start the stub server", e);
+        }
+    }
+
+    /**
+     * @return the base URL to use as the Function's invoke endpoint.
+     */
+    public String getEndpoint() {
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * @return the number of connections accepted.
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return the most requests held at once, waiting to be answered.
+     */
+    public long getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.close(CloseMode.IMMEDIATE);
+        responder.shutdownNow();
+    }
+
+    private class EchoHandler implements AsyncServerRequestHandler<Message<HttpRequest, byte[]>> {
+
+        private final long delayMillis;
+
+        EchoHandler(final long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public AsyncRequestConsumer<Message<HttpRequest, byte[]>> prepare(
+            final HttpRequest request,
+            final EntityDetails entityDetails,
+            final HttpContext context
+            ) {
+
+            return new BasicRequestConsumer<>(entityDetails != null ? new BasicAsyncEntityConsumer() : null);
+        }
+
+        @Override
+        public void handle(
+            final Message<HttpRequest, byte[]> request,
+            final ResponseTrigger responseTrigger,
+            final HttpContext context
+            ) throws HttpException, IOException {
+
+            final long held = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(held, Math::max);
+
+            final DelayedBody body = new DelayedBody((request.getBody() != null) ? request.getBody() : new byte[0]);
+            responder.schedule(() -> {
+                inFlight.decrementAndGet();
+                body.release();
+            }, Math.max(0L, delayMillis), TimeUnit.MILLISECONDS);
+            responseTrigger.submitResponse(AsyncResponseBuilder.create(200).setEntity(body).build(), context);
+        }
+    }
+
+    /**
+     * A response body which is held back until released. The response is
+     * submitted, and its body written, on the I/O thread; the timer only asks
+     * for output once the body is due.
+     */
+    private static class DelayedBody implements AsyncEntityProducer {
+
+        private final AsyncEntityProducer body;
+
+        // Guarded by 'this'.
+        private boolean due;
+        private DataStreamChannel waiting;
+
+        DelayedBody(final byte[] body) {
+            this.body = new BasicAsyncEntityProducer(body, ContentType.APPLICATION_OCTET_STREAM);
+        }
+
+        synchronized void release() {
+            due = true;
+            if (waiting != null) {
+                waiting.requestOutput();
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            return due ? body.available() : 0;
+        }
+
+        @Override
+        public synchronized void produce(final DataStreamChannel channel) throws IOException {
+            if (due) {
+                body.produce(channel);
+            } else {
+                waiting = channel;
+            }
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public void failed(final Exception cause) {
+            body.failed(cause);
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return body.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return body.getContentEncoding();
+        }
+
+        @Override
+        public boolean isChunked() {
+            return body.isChunked();
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return body.getTrailerNames();
+        }
+
+        @Override
+        public void releaseResources() {
+            body.releaseResources();
+        }
+    }
+
+    private class ConnectionCounter implements IOSessionListener {
+
+        @Override
+        public void connected(final IOSession session) {
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void startTls(final IOSession session) {
+        }
+
+        @Override
+        public void inputReady(final IOSession session) {
+        }
+
+        @Override
+        public void outputReady(final IOSession session) {
+        }
+
+        @Override
+        public void timeout(final IOSession session) {
+        }
+
+        @Override
+        public void exception(final IOSession session, final Exception ex) {
+        }
+
+        @Override
+        public void disconnected(final IOSession session) {
+        }
+    }
+}
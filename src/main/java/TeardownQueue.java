@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.oracle.bmc.model.BmcException;
+
+/**
+ * A persistent queue of deferred teardowns.
+ *
+ * The subnet and VCN of a stack can only be removed 30 minutes after the last
+ * invocation of its function. Each command which invokes the function records
+ * the time of the invocation against its stack, and keeps recording it every
+ * minute for as long as it runs, so a long-running command (e.g. a daemon)
+ * keeps pushing back a teardown queued by another process. A teardown is
+ * queued for the earliest moment that window allows. Running the queue tears down every
+ * stack which is due, concurrently, and, when waiting, sleeps until the next
+ * one is due rather than failing and needing to be run again.
+ *
+ * A teardown which still fails with a 409 (Conflict), because network
+ * resources are still clearing, is rescheduled a few minutes later, up to a
+ * limited number of attempts.
+ *
+ * The queue is a properties file, updated under a file lock and replaced
+ * atomically, so separate processes (e.g. a daemon and a teardown) can share
+ * it safely. A run claims each stack it tears down, under the lock, for a
+ * lease; other runs skip a claimed stack until it is released or its lease
+ * expires.
+ */
+public class TeardownQueue {
+
+    final static long POST_INVOKE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    final static long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    final static int MAX_ATTEMPTS = 6;
+    final static long HEARTBEAT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    final static long CLAIM_LEASE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Property key prefixes; each is followed by the stack, '<compartment id>/<name>'.
+    final static String LAST_INVOKE = "lastInvoke.";
+    final static String DUE = "due.";
+    final static String ATTEMPTS = "attempts.";
+    // '<owner> <lease expiry millis>' of a run tearing the stack down.
+    final static String CLAIM = "claim.";
+
+    private final Path file;
+    private final Path lockFile;
+    private final String owner;
+
+    /**
+     * @param file the file the queue is kept in.
+     */
+    public TeardownQueue(final Path file) {
+        this.file = file.toAbsolutePath();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * Records an invocation of a stack's function, now. A teardown already
+     * queued for the stack is pushed back to honour the new invocation.
+     *
+     * @param compartmentId the compartment in which the stack exists.
+     * @param name          the name prefix of the stack's resources.
+     * @throws IOException if the queue could not be updated.
+     */
+    public void recordInvoke(final String compartmentId, final String name) throws IOException {
+        final String stack = stack(compartmentId, name);
+        final long now = System.currentTimeMillis();
+        update(queue -> {
+            queue.setProperty(LAST_INVOKE + stack, Long.toString(now));
+            if (queue.getProperty(DUE + stack) != null) {
+                queue.setProperty(DUE + stack, Long.toString(
+                    Math.max(Long.parseLong(queue.getProperty(DUE + stack)), now + POST_INVOKE_WINDOW_MILLIS)));
+            }
+        });
+    }
+
+    /**
+     * Records an invocation of a stack's function now, and again every
+     * minute until the returned Heartbeat is closed, which records a last one.
+     *
+     * @param compartmentId the compartment in which the stack exists.
+     * @param name          the name prefix of the stack's resources.
+     * @return the Heartbeat.
+     * @throws IOException if the queue could not be updated.
+     */
+    public Heartbeat startHeartbeat(final String compartmentId, final String name) throws IOException {
+        recordInvoke(compartmentId, name);
+        return new Heartbeat(compartmentId, name);
+    }
+
+    /**
+     * Queues a teardown of a stack for the earliest moment it is allowed.
+     *
+     * @param compartmentId the compartment in which the stack exists.
+     * @param name          the name prefix of the stack's resources.
+     * @return when the teardown is due, in milliseconds since the epoch.
+     * @throws IOException if the queue could not be updated.
+     */
+    public long schedule(final String compartmentId, final String name) throws IOException {
+        final String stack = stack(compartmentId, name);
+        final long[] due = new long[1];
+        update(queue -> {
+            final String lastInvoke = queue.getProperty(LAST_INVOKE + stack);
+            due[0] = Math.max(
+                System.currentTimeMillis(),
+                (lastInvoke != null) ? Long.parseLong(lastInvoke) + POST_INVOKE_WINDOW_MILLIS : 0L);
+            queue.setProperty(DUE + stack, Long.toString(due[0]));
+            queue.setProperty(ATTEMPTS + stack, "0");
+        });
+        return due[0];
+    }
+
+    /**
+     * Tears down every queued stack which is due, concurrently.
+     *
+     * @param clients the service clients to use, in the region in which the
+     *                stacks exist.
+     * @param wait    whether to sleep until each remaining stack is due, or
+     *                leave them queued for a later run.
+     * @throws Exception if any teardown failed for good.
+     */
+    public void run(final ServiceClients clients, final boolean wait) throws Exception {
+        final List<String> failed = new ArrayList<>();
+        while (true) {
+            final List<String> due = new ArrayList<>();
+            final List<String> claimedElsewhere = new ArrayList<>();
+            final long[] nextDue = { Long.MAX_VALUE };
+            update(queue -> {
+                final long now = System.currentTimeMillis();
+                for (final String key : queue.stringPropertyNames()) {
+                    if (!key.startsWith(DUE)) {
+                        continue;
+                    }
+                    final String stack = key.substring(DUE.length());
+                    final String claim = queue.getProperty(CLAIM + stack);
+                    if (claim != null && Long.parseLong(claim.substring(claim.lastIndexOf(' ') + 1)) > now) {
+                        claimedElsewhere.add(stack + " (" + claim.substring(0, claim.lastIndexOf(' ')) + ")");
+                        continue;
+                    }
+                    final long dueMillis = Long.parseLong(queue.getProperty(key));
+                    if (dueMillis <= now) {
+                        // Claimed under the lock, so no other run tears the stack down concurrently.
+                        queue.setProperty(CLAIM + stack, owner + " " + (now + CLAIM_LEASE_MILLIS));
+                        due.add(stack);
+                    } else {
+                        nextDue[0] = Math.min(nextDue[0], dueMillis);
+                    }
+                }
+            });
+            for (final String stack : claimedElsewhere) {
+                System.out.println("Skipping " + stack + ", which another teardown is running");
+            }
+
+            if (!due.isEmpty()) {
+                failed.addAll(teardown(clients, due));
+                continue;
+            }
+            if (nextDue[0] == Long.MAX_VALUE) {
+                break;
+            }
+            if (!wait) {
+                System.out.println("Next teardown is due at " + format(nextDue[0]));
+                break;
+            }
+            System.out.println("Waiting until " + format(nextDue[0]) + " for the next teardown");
+            Thread.sleep(Math.max(0L, nextDue[0] - System.currentTimeMillis()));
+        }
+
+        if (!failed.isEmpty()) {
+            throw new Exception("Failed to tear down: " + String.join(", ", failed));
+        }
+    }
+
+    /**
+     * Tears down a batch of stacks concurrently, and requeues or removes each.
+     *
+     * @return the stacks whose teardown failed for good.
+     */
+    private List<String> teardown(final ServiceClients clients, final List<String> stacks) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(stacks.size());
+        try {
+            final List<Future<?>> teardowns = new ArrayList<>();
+            for (final String stack : stacks) {
+                final int separator = stack.lastIndexOf('/');
+                final String compartmentId = stack.substring(0, separator);
+                final String name = stack.substring(separator + 1);
+                teardowns.add(executor.submit(() -> {
+                    InvokeFunctionExample.teardownResources(clients, compartmentId, name);
+                    return null;
+                }));
+            }
+
+            final List<String> failed = new ArrayList<>();
+            for (int i = 0; i < stacks.size(); i++) {
+                final String stack = stacks.get(i);
+                try {
+                    teardowns.get(i).get();
+                    update(queue -> {
+                        queue.remove(LAST_INVOKE + stack);
+                        queue.remove(DUE + stack);
+                        queue.remove(ATTEMPTS + stack);
+                        queue.remove(CLAIM + stack);
+                    });
+                } catch (final ExecutionException e) {
+                    if (!requeue(stack, e.getCause())) {
+                        System.err.println("Failed to tear down " + stack + ": " + e.getCause());
+                        failed.add(stack);
+                    }
+                }
+            }
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reschedules a teardown which failed with a conflict, unless it has run
+     * out of attempts; otherwise removes it from the queue.
+     *
+     * @return whether the teardown was rescheduled.
+     */
+    private boolean requeue(final String stack, final Throwable error) throws IOException {
+        final boolean[] requeued = new boolean[1];
+        update(queue -> {
+            queue.remove(CLAIM + stack);
+            final int attempts = Integer.parseInt(queue.getProperty(ATTEMPTS + stack, "0")) + 1;
+            if (error instanceof BmcException
+                && ((BmcException) error).getStatusCode() == 409
+                && attempts < MAX_ATTEMPTS) {
+                final long due = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                queue.setProperty(DUE + stack, Long.toString(due));
+                queue.setProperty(ATTEMPTS + stack, Integer.toString(attempts));
+                System.out.println("Resources of " + stack + " are still in use, retrying at " + format(due));
+                requeued[0] = true;
+            } else {
+                queue.remove(DUE + stack);
+                queue.remove(ATTEMPTS + stack);
+            }
+        });
+        return requeued[0];
+    }
+
+    private Properties load() throws IOException {
+        final Properties queue = new Properties();
+        if (Files.exists(file)) {
+            try (final InputStream in = Files.newInputStream(file)) {
+                queue.load(in);
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Applies a change to the queue, holding the lock file so concurrent
+     * processes do not lose each other's changes.
+     */
+    private void update(final Consumer<Properties> change) throws IOException {
+        try (final FileChannel lock = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             final FileLock held = lock.lock()) {
+
+            final Properties queue = load();
+            change.accept(queue);
+
+            final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (final OutputStream out = Files.newOutputStream(temporary)) {
+                queue.store(out, "TeardownQueue");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Records invocations of a stack's function every minute, while a command
+     * which invokes it runs.
+     */
+    public class Heartbeat implements AutoCloseable {
+
+        private final String compartmentId;
+        private final String name;
+        private final ScheduledExecutorService scheduler;
+
+        private Heartbeat(final String compartmentId, final String name) {
+            this.compartmentId = compartmentId;
+            this.name = name;
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "teardown-queue-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    recordInvoke(compartmentId, name);
+                } catch (final IOException e) {
+                    System.err.println("Failed to record an invocation in " + file + ": " + e);
+                }
+            }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void close() throws IOException {
+            scheduler.shutdownNow();
+            recordInvoke(compartmentId, name);
+        }
+    }
+
+    private static String stack(final String compartmentId, final String name) {
+        return compartmentId + "/" + name;
+    }
+
+    private static String format(final long epochMillis) {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(new Date(epochMillis));
+    }
+}
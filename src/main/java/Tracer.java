@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.oracle.bmc.model.BmcException;
+
+/**
+ * Records a span for each traced operation and exports them to a file as
+ * OTLP/JSON.
+ *
+ * Spans nest per thread: a span started while another is open on the same
+ * thread becomes its child, and a span with no parent starts a new trace.
+ * Each span carries its duration and, where known, the OCID of the resource
+ * it acted on ('oci.ocid') and the request id returned by OCI
+ * ('oci.opc_request_id'), which OCI support can use to find the request.
+ *
+ * Finished spans are appended to the file in batches, one OTLP
+ * 'ExportTraceServiceRequest' per line, as read by the OpenTelemetry
+ * Collector's 'otlpjsonfile' receiver. A batch is written by a background
+ * thread once it is full and every few seconds, and when 'flush' is called;
+ * ending a span only queues it, so no traced thread (e.g. an I/O reactor
+ * completing a request) waits on the file. Tracing is disabled, and costs a
+ * ThreadLocal read per operation, until a file is set.
+ */
+public class Tracer {
+
+    final static String SERVICE_NAME = "oci-java-sdk-function-example";
+    final static int FLUSH_BATCH_SIZE = 512;
+    final static long FLUSH_INTERVAL_MILLIS = 5000L;
+
+    // OTLP SpanKind and StatusCode values.
+    final static int KIND_INTERNAL = 1;
+    final static int KIND_CLIENT = 3;
+    final static int STATUS_OK = 1;
+    final static int STATUS_ERROR = 2;
+
+    private final static ThreadLocal<Deque<Span>> OPEN = ThreadLocal.withInitial(ArrayDeque::new);
+    private final static ConcurrentLinkedQueue<Span> FINISHED = new ConcurrentLinkedQueue<>();
+    private final static AtomicInteger UNFLUSHED = new AtomicInteger();
+    private final static JsonFactory JSON = new JsonFactory();
+
+    private static volatile Path file;
+    private static volatile ScheduledExecutorService flusher;
+
+    /**
+     * An operation which can annotate its span.
+     */
+    public interface TracedCall<T> {
+
+        T call(Span span) throws Exception;
+    }
+
+    /**
+     * Enables tracing, appending spans to a file.
+     *
+     * @param traceFile the file to append spans to, or null to disable tracing.
+     */
+    public static synchronized void setFile(final Path traceFile) {
+        file = traceFile;
+        if (traceFile != null && flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "trace-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(
+                Tracer::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * Runs an operation in a span of kind INTERNAL.
+     *
+     * @param name the name of the span.
+     * @param call the operation.
+     * @return the result of the operation.
+     * @throws Exception if the operation fails; the span records the error.
+     */
+    public static <T> T trace(final String name, final TracedCall<T> call) throws Exception {
+        return trace(name, KIND_INTERNAL, call);
+    }
+
+    /**
+     * Runs a single request to OCI in a span of kind CLIENT.
+     *
+     * @param name the name of the span, conventionally the OCI operation.
+     * @param call the request.
+     * @return the result of the request.
+     * @throws Exception if the request fails; the span records the error.
+     */
+    public static <T> T request(final String name, final TracedCall<T> call) throws Exception {
+        return trace(name, KIND_CLIENT, call);
+    }
+
+    /**
+     * Starts an asynchronous request to OCI in a span of kind CLIENT, which
+     * ends when the request completes. The span is the current span only
+     * while the request is being started.
+     *
+     * @param name  the name of the span, conventionally the OCI operation.
+     * @param start starts the request.
+     * @return the result of the request.
+     */
+    public static <T> CompletableFuture<T> requestAsync(
+        final String name,
+        final Function<Span, CompletableFuture<T>> start
+        ) {
+
+        if (file == null) {
+            return start.apply(Span.NOOP);
+        }
+
+        final Deque<Span> open = OPEN.get();
+        final Span span = new Span(name, KIND_CLIENT, open.peek());
+        final CompletableFuture<T> result;
+        open.push(span);
+        try {
+            result = start.apply(span);
+        } catch (final RuntimeException | Error e) {
+            end(span, e);
+            throw e;
+        } finally {
+            open.pop();
+        }
+        return result.whenComplete((response, error) -> end(span, error));
+    }
+
+    private static <T> T trace(final String name, final int kind, final TracedCall<T> call) throws Exception {
+        if (file == null) {
+            return call.call(Span.NOOP);
+        }
+
+        final Deque<Span> open = OPEN.get();
+        final Span span = new Span(name, kind, open.peek());
+        open.push(span);
+        Throwable error = null;
+        try {
+            return call.call(span);
+        } catch (final Exception | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            open.pop();
+            end(span, error);
+        }
+    }
+
+    private static void end(final Span span, final Throwable error) {
+        span.endEpochNanos = span.startEpochNanos + (System.nanoTime() - span.startNanos);
+        if (error == null) {
+            span.status = STATUS_OK;
+        } else {
+            final Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                ? error.getCause()
+                : error;
+            span.status = STATUS_ERROR;
+            span.statusMessage = cause.toString();
+            if (cause instanceof BmcException) {
+                span.setRequestId(((BmcException) cause).getOpcRequestId());
+                span.setAttribute("http.status_code", Integer.toString(((BmcException) cause).getStatusCode()));
+            }
+        }
+
+        FINISHED.add(span);
+        // Wake the flusher once per full batch, rather than write on this thread.
+        final ScheduledExecutorService batchFlusher = flusher;
+        if (UNFLUSHED.incrementAndGet() == FLUSH_BATCH_SIZE && batchFlusher != null) {
+            batchFlusher.execute(Tracer::flush);
+        }
+    }
+
+    /**
+     * Appends all finished spans to the trace file.
+     */
+    public static void flush() {
+        final Path traceFile = file;
+        if (traceFile == null) {
+            return;
+        }
+
+        final List<Span> batch = new ArrayList<>();
+        Span span;
+        while ((span = FINISHED.poll()) != null) {
+            batch.add(span);
+        }
+        UNFLUSHED.addAndGet(-batch.size());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        synchronized (Tracer.class) {
+            try (final Writer writer = Files.newBufferedWriter(traceFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                 final JsonGenerator json = JSON.createGenerator(writer)) {
+                writeExportRequest(json, batch);
+                json.flush();
+                writer.write('\n');
+            } catch (final IOException e) {
+                System.err.println("Failed to export " + batch.size() + " spans to " + traceFile + ": " + e);
+            }
+        }
+    }
+
+    private static void writeExportRequest(final JsonGenerator json, final List<Span> spans) throws IOException {
+        json.writeStartObject();
+        json.writeArrayFieldStart("resourceSpans");
+        json.writeStartObject();
+
+        json.writeObjectFieldStart("resource");
+        json.writeArrayFieldStart("attributes");
+        writeAttribute(json, "service.name", SERVICE_NAME);
+        json.writeEndArray();
+        json.writeEndObject();
+
+        json.writeArrayFieldStart("scopeSpans");
+        json.writeStartObject();
+        json.writeObjectFieldStart("scope");
+        json.writeStringField("name", InvokeFunctionExample.class.getName());
+        json.writeEndObject();
+        json.writeArrayFieldStart("spans");
+        for (final Span span : spans) {
+            writeSpan(json, span);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndArray();
+
+        json.writeEndObject();
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private static void writeSpan(final JsonGenerator json, final Span span) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("traceId", span.traceId);
+        json.writeStringField("spanId", span.spanId);
+        if (span.parentSpanId != null) {
+            json.writeStringField("parentSpanId", span.parentSpanId);
+        }
+        json.writeStringField("name", span.name);
+        json.writeNumberField("kind", span.kind);
+        // 64-bit integers are strings in OTLP/JSON.
+        json.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos));
+        json.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos));
+
+        json.writeArrayFieldStart("attributes");
+        for (final Map.Entry<String, String> attribute : span.attributes.entrySet()) {
+            writeAttribute(json, attribute.getKey(), attribute.getValue());
+        }
+        json.writeEndArray();
+
+        json.writeObjectFieldStart("status");
+        json.writeNumberField("code", span.status);
+        if (span.statusMessage != null) {
+            json.writeStringField("message", span.statusMessage);
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static void writeAttribute(final JsonGenerator json, final String key, final String value)
+        throws IOException {
+
+        json.writeStartObject();
+        json.writeStringField("key", key);
+        json.writeObjectFieldStart("value");
+        json.writeStringField("stringValue", value);
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    /**
+     * @param longs the number of random 64-bit values.
+     * @return 16 lowercase hex digits per value.
+     */
+    private static String randomHex(final int longs) {
+        final StringBuilder hex = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            final String digits = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            for (int pad = digits.length(); pad < 16; pad++) {
+                hex.append('0');
+            }
+            hex.append(digits);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A single timed operation.
+     */
+    public static class Span {
+
+        // Handed to traced operations while tracing is disabled; ignores everything.
+        final static Span NOOP = new Span();
+
+        final String traceId;
+        final String spanId;
+        final String parentSpanId;
+        final String name;
+        final int kind;
+        final long startNanos;
+        final long startEpochNanos;
+        final Map<String, String> attributes;
+
+        long endEpochNanos;
+        int status;
+        String statusMessage;
+
+        private Span() {
+            this.traceId = null;
+            this.spanId = null;
+            this.parentSpanId = null;
+            this.name = null;
+            this.kind = KIND_INTERNAL;
+            this.startNanos = 0L;
+            this.startEpochNanos = 0L;
+            this.attributes = null;
+        }
+
+        Span(final String name, final int kind, final Span parent) {
+            // A 16 byte trace id and an 8 byte span id.
+            this.traceId = (parent != null) ? parent.traceId : randomHex(2);
+            this.spanId = randomHex(1);
+            this.parentSpanId = (parent != null) ? parent.spanId : null;
+            this.name = name;
+            this.kind = kind;
+            this.startNanos = System.nanoTime();
+            this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            this.attributes = new LinkedHashMap<>();
+        }
+
+        /**
+         * @param ocid the OCID of the resource the operation acted on.
+         */
+        public Span setOcid(final String ocid) {
+            return setAttribute("oci.ocid", ocid);
+        }
+
+        /**
+         * @param opcRequestId the 'opc-request-id' of the OCI response.
+         */
+        public Span setRequestId(final String opcRequestId) {
+            return setAttribute("oci.opc_request_id", opcRequestId);
+        }
+
+        public Span setAttribute(final String key, final String value) {
+            if (attributes != null && value != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+    }
+}